@@ -0,0 +1,61 @@
+package com.airport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Sort options are passed as names because generated benchmark code lives outside this package
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ExportBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int airplanes;
+
+    @Param({"NONE", "BY_NAME"})
+    public String airportSort;
+
+    @Param({"NONE", "BY_NAME", "BY_KM", "BY_CAPACITY", "BY_FUEL"})
+    public String airlineSort;
+
+    private Airport airport;
+    private ExportOpts opts;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        airport = FleetGenerator.airport(airplanes, 42);
+        opts = new ExportOpts(AirportSortOpts.valueOf(airportSort), AirlineSortOpts.valueOf(airlineSort));
+        directory = Files.createTempDirectory("airport-export");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("airlines.json"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Path exportJson() throws IOException {
+        final Path file = directory.resolve("airlines.json");
+        DataManager.exportData(airport, file, opts);
+        return file;
+    }
+}
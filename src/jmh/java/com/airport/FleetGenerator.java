@@ -0,0 +1,53 @@
+package com.airport;
+
+import java.util.Random;
+
+// Deterministic synthetic airports for the benchmarks. Fleets are spread over airlines of at most
+// AIRLINE_SIZE airplanes, models and manufacturers repeat like in real fleets, and part of each
+// fleet has flown so every sort option has work to do.
+final class FleetGenerator {
+    static final int AIRLINE_SIZE = 1_000;
+
+    private static final String[] MODELS = {"737", "747", "777", "787", "A320", "A330", "A350", "A380", "E190"};
+    private static final Manufacturer[] MANUFACTURERS = {
+            new Manufacturer("Boeing", "USA"),
+            new Manufacturer("Airbus", "France"),
+            new Manufacturer("Embraer", "Brazil")
+    };
+
+    private FleetGenerator() {
+    }
+
+    static Airport airport(final int airplanes, final long seed) {
+        final Random random = new Random(seed);
+        final int airlineCount = Math.max(1, (airplanes + AIRLINE_SIZE - 1) / AIRLINE_SIZE);
+        final Airport airport = new Airport("Benchmark Airport", airlineCount);
+        int created = 0;
+        for (int a = 0; a < airlineCount; a++) {
+            final Airline airline = new Airline(airlineName(a), AIRLINE_SIZE);
+            airport.addAirline(airline);
+            final int size = Math.min(AIRLINE_SIZE, airplanes - created);
+            for (int i = 0; i < size; i++) {
+                final int model = random.nextInt(MODELS.length);
+                final double fuelForKilometer = 1 + random.nextInt(20) / 4.0;
+                final double fuelCapacity = 1_000 + random.nextInt(100) * 100;
+                final Airplane airplane = new Airplane(airplaneId(created), MODELS[model],
+                        MANUFACTURERS[model % MANUFACTURERS.length], fuelForKilometer, fuelCapacity);
+                if (random.nextBoolean()) {
+                    airplane.fly(random.nextInt((int) (fuelCapacity / fuelForKilometer)));
+                }
+                airline.addAirplane(airplane);
+                created++;
+            }
+        }
+        return airport;
+    }
+
+    static String airlineName(final int index) {
+        return "Airline-" + index;
+    }
+
+    static String airplaneId(final int index) {
+        return "P" + index;
+    }
+}
@@ -0,0 +1,75 @@
+package com.airport;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Keys are drawn up front from a fixed pool so the measured loop is the lookup alone
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LookupBenchmark {
+    private static final int KEYS = 1 << 12;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int airplanes;
+
+    private Airport airport;
+    private String[] airlineKeys;
+    private String[] airplaneKeys;
+    private Airline[] airplaneOwners;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        airport = FleetGenerator.airport(airplanes, 42);
+        final Random random = new Random(7);
+        airlineKeys = new String[KEYS];
+        airplaneKeys = new String[KEYS];
+        airplaneOwners = new Airline[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            final int airplane = random.nextInt(airplanes);
+            airplaneKeys[i] = FleetGenerator.airplaneId(airplane);
+            airlineKeys[i] = FleetGenerator.airlineName(airplane / FleetGenerator.AIRLINE_SIZE);
+            airplaneOwners[i] = airport.findAirline(airlineKeys[i]);
+        }
+    }
+
+    @Benchmark
+    public Airline findAirline() {
+        next = (next + 1) & (KEYS - 1);
+        return airport.findAirline(airlineKeys[next]);
+    }
+
+    @Benchmark
+    public Airplane findAirplane() {
+        next = (next + 1) & (KEYS - 1);
+        return airplaneOwners[next].findAirplane(airplaneKeys[next]);
+    }
+
+    // The path a CLI command takes: airline by name, then airplane by id
+    @Benchmark
+    public Airplane findAirlineThenAirplane() {
+        next = (next + 1) & (KEYS - 1);
+        return airport.findAirline(airlineKeys[next]).findAirplane(airplaneKeys[next]);
+    }
+
+    @Benchmark
+    public double readAirplaneState() {
+        next = (next + 1) & (KEYS - 1);
+        return airplaneOwners[next].findAirplane(airplaneKeys[next]).getCurrentFuel();
+    }
+}
@@ -0,0 +1,88 @@
+package com.airport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Loading and saving whole state files; at 1M airplanes the JSON file is a few hundred MB
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StateFileBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int airplanes;
+
+    private Airport airport;
+    private Path directory;
+    private Path json;
+    private Path snapshot;
+    private Path written;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        airport = FleetGenerator.airport(airplanes, 42);
+        directory = Files.createTempDirectory("airport-state");
+        json = directory.resolve("airlines.json");
+        snapshot = directory.resolve("airlines.bin");
+        written = directory.resolve("written.bin");
+        DataManager.exportData(airport, json, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        DataManager.exportSnapshot(airport, snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(written);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Airport importJson() throws IOException {
+        return DataManager.importData(json);
+    }
+
+    @Benchmark
+    public Airport importSnapshot() throws IOException {
+        return DataManager.importSnapshot(snapshot);
+    }
+
+    // Startup cost of the mapped store: header and airline table only
+    @Benchmark
+    public Airport openMapped() throws IOException {
+        return MappedFleetStore.open(snapshot).getAirport();
+    }
+
+    // Mapped open followed by touching every airline, i.e. the full lazy load
+    @Benchmark
+    public double openMappedAndLoad() throws IOException {
+        double kilometers = 0;
+        for (final Airline airline : MappedFleetStore.open(snapshot).getAirport().getAirlines()) {
+            kilometers += airline.getTotalKilometersFlown();
+        }
+        return kilometers;
+    }
+
+    @Benchmark
+    public Path exportSnapshot() throws IOException {
+        DataManager.exportSnapshot(airport, written);
+        return written;
+    }
+}
@@ -5,9 +5,21 @@ import java.util.List;
 import java.util.Objects;
 
 public class Airline {
-    private String name;
-    private final List<Airplane> airplanes;
+    // Supplies the fleet of an airline whose airplanes have not been materialized yet
+    interface Loader {
+        int size();
+
+        void load(Fleet fleet);
+    }
+
+    private volatile String name;
+    private final Fleet fleet;
     private final int maxAirplanes;
+    private volatile Airport airport;
+    // When the airline joined its airport under its current name; see DataManager.exportDelta
+    private volatile long version;
+    private volatile Loader loader;
+    private final Object loadLock = new Object();
 
     public Airline(final String name, final int maxAirplanes) {
         if (maxAirplanes <= 0) {
@@ -16,40 +28,167 @@ public class Airline {
 
         this.name = name;
         this.maxAirplanes = maxAirplanes;
-        this.airplanes = new ArrayList<>();
+        this.fleet = new Fleet();
     }
 
-    public void addAirplane(final Airplane airplane) {
-        if (airplanes.size() >= maxAirplanes) {
-            throw new IllegalStateException("Airline at capacity: " + maxAirplanes);
+    Airline(final String name, final int maxAirplanes, final Loader loader) {
+        this(name, maxAirplanes);
+        this.loader = loader;
+    }
+
+    private void ensureLoaded() {
+        if (loader == null) {
+            return;
         }
 
-        airplanes.add(airplane);
+        synchronized (loadLock) {
+            final Loader pending = loader;
+            if (pending != null) {
+                pending.load(fleet);
+                loader = null;
+            }
+        }
+    }
+
+    boolean isLoaded() {
+        return loader == null;
+    }
+
+    // Airplane count without materializing a lazily loaded fleet
+    int size() {
+        final Loader pending = loader;
+        return pending != null ? pending.size() : fleet.size();
+    }
+
+    public void addAirplane(final Airplane airplane) {
+        ensureLoaded();
+        fleet.add(airplane, maxAirplanes);
     }
 
     public void removeAirplane(final String id) {
-        airplanes.removeIf(a -> a.getId().equals(id));
+        ensureLoaded();
+        final Airplane removed = fleet.remove(id);
+        final Airport owner = airport;
+        if (removed != null && owner != null) {
+            owner.tombstone(name, id);
+        }
     }
 
     public void updateName(final String newName) {
         if (newName == null || newName.trim().isEmpty()) {
             throw new IllegalArgumentException("Name cannot be empty");
         }
+        final Airport owner = airport;
+        if (owner != null) {
+            owner.renameAirline(this, newName);
+        } else {
+            this.name = newName;
+        }
+    }
+
+    // Called by Airport while it holds its lock, so the name and the index change together
+    void setName(final String name, final long version) {
+        this.name = name;
+        this.version = version;
+    }
 
-        this.name = newName;
+    long version() {
+        return version;
+    }
+
+    // Version of the latest change to the airline or any of its airplanes
+    long latestVersion() {
+        return Math.max(version, fleet.latestVersion());
+    }
+
+    // An airline that was never loaded has no airplanes stamped after the load, so it stays unloaded
+    FleetSnapshot changedSince(final long since) {
+        return fleet.changedSince(since);
     }
 
     public boolean isOperational() {
-        return !airplanes.isEmpty();
+        return size() > 0;
     }
     public Airplane findAirplane(final String id) {
-        return airplanes.stream()
-                .filter(a -> a.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Airplane not found: " + id));
+        ensureLoaded();
+        final Airplane airplane = fleet.get(id);
+        if (airplane == null) {
+            throw new IllegalArgumentException("Airplane not found: " + id);
+        }
+
+        return airplane;
     }
 
-    public List<Airplane> getAirplanes() { return List.copyOf(airplanes); }
+    // Immutable; adding or removing airplanes later publishes a new list and leaves this one as it was
+    public List<Airplane> getAirplanes() {
+        ensureLoaded();
+        return fleet.members();
+    }
+
+    Fleet fleet() {
+        ensureLoaded();
+        return fleet;
+    }
+
+    // All airplanes and their state as of one instant
+    FleetSnapshot snapshot() {
+        ensureLoaded();
+        return fleet.snapshot();
+    }
+
+    FleetSnapshot snapshot(final AirlineSortOpts sort) {
+        ensureLoaded();
+        return fleet.snapshot(sort);
+    }
+
+    List<Airplane> airplanesSortedBy(final AirlineSortOpts sort) {
+        return snapshot(sort).airplanes();
+    }
+
+    // Fills every airplane whose fuel is below threshold * capacity; returns the airplanes refueled
+    public List<Airplane> refuelAll(final double threshold) {
+        if (!(threshold >= 0)) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+
+        final FleetSnapshot fleet = snapshot();
+        final List<Airplane> refueled = new ArrayList<>();
+        for (int i = 0; i < fleet.size(); i++) {
+            if (fleet.currentFuel(i) < threshold * fleet.fuelCapacity(i)) {
+                // Refuel clamps at capacity, so this fills the tank even if the level moved since
+                fleet.airplane(i).refuel(fleet.fuelCapacity(i));
+                refueled.add(fleet.airplane(i));
+            }
+        }
+        return refueled;
+    }
+
+    // The k airplanes with the highest km, fuel or capacity, highest first
+    public List<Airplane> top(final FleetQuery.Field field, final int k) {
+        FleetRanking.checkTop(k);
+        return fleet().top(FleetRanking.sort(field), k).airplanes();
+    }
+
+    // The airplanes whose km, fuel or capacity lies within [min, max], ascending
+    public List<Airplane> range(final FleetQuery.Field field, final double min, final double max) {
+        FleetRanking.checkRange(min, max);
+        return fleet().range(FleetRanking.sort(field), min, max).airplanes();
+    }
+
+    public double getTotalKilometersFlown() {
+        ensureLoaded();
+        return fleet.sumKilometersFlown();
+    }
+
+    public double getTotalCurrentFuel() {
+        ensureLoaded();
+        return fleet.sumCurrentFuel();
+    }
+
+    public double getTotalFuelCapacity() {
+        ensureLoaded();
+        return fleet.sumFuelCapacity();
+    }
 
     public String getName() {
         return name;
@@ -59,6 +198,12 @@ public class Airline {
         return maxAirplanes;
     }
 
+    void setAirport(final Airport airport, final VersionClock clock) {
+        this.airport = airport;
+        this.version = clock != null ? clock.next() : 0;
+        fleet.setClock(clock);
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -80,7 +225,7 @@ public class Airline {
 
     @Override
     public String toString() {
-        return "Airline: " + name + " (Operational: " + isOperational() + ", Capacity: " + airplanes.size() + "/"
+        return "Airline: " + name + " (Operational: " + isOperational() + ", Capacity: " + size() + "/"
                 + maxAirplanes + ")";
     }
 }
\ No newline at end of file
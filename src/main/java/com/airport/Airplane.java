@@ -6,10 +6,9 @@ public class Airplane {
     private final String id;
     private final String model;
     private final Manufacturer manufacturer;
-    private final double fuelForKilometer;
-    private final double fuelCapacity;
-    private double currentFuel;
-    private double kilometersFlown;
+    // Rebound by the owning fleet under its write lock when the airplane moves or shifts slots
+    private volatile Fleet fleet;
+    private volatile int slot;
 
     public Airplane(
             final String id,
@@ -43,27 +42,31 @@ public class Airplane {
         this.id = id;
         this.model = model;
         this.manufacturer = manufacturer;
-        this.fuelForKilometer = fuelForKilometer;
-        this.fuelCapacity = fuelCapacity;
-        this.currentFuel = currentFuel;
-        this.kilometersFlown = kilometersFlown;
+        this.fleet = Fleet.single(this, fuelForKilometer, fuelCapacity, currentFuel, kilometersFlown);
     }
 
-    public double fuelNeeded(final double kilometers) {
-        return kilometers * this.fuelForKilometer;
+    // Airplanes created by a Fleet while loading records; the fleet binds them to a slot
+    Airplane(final String id, final String model, final Manufacturer manufacturer) {
+        this.id = id;
+        this.model = model;
+        this.manufacturer = manufacturer;
     }
 
-    private void checkEnoughFuel(final double fuel) {
-        if (fuel >= currentFuel) {
-            throw new IllegalStateException("Not enough fuel");
-        }
+    public double fuelNeeded(final double kilometers) {
+        return kilometers * getFuelForKilometer();
     }
 
+    // The fuel check and the state change happen under one write lock, so concurrent flights
+    // of the same airplane cannot both pass the check against the same fuel level
     public void fly(final double kilometers) {
-        final double fuel = this.fuelNeeded(kilometers);
-        checkEnoughFuel(fuel);
-        this.currentFuel -= fuel;
-        this.kilometersFlown += kilometers;
+        update((fleet, slot) -> {
+            final double fuel = kilometers * fleet.value(Fleet.FUEL_FOR_KILOMETER, slot);
+            final double currentFuel = fleet.value(Fleet.CURRENT_FUEL, slot);
+            if (fuel >= currentFuel) {
+                throw new IllegalStateException("Not enough fuel");
+            }
+            fleet.setState(slot, currentFuel - fuel, fleet.value(Fleet.KILOMETERS_FLOWN, slot) + kilometers);
+        });
     }
 
     public void refuel(final double amount) {
@@ -71,13 +74,93 @@ public class Airplane {
             throw new IllegalArgumentException("Amount should be less than 0");
         }
 
-        currentFuel += amount;
+        update((fleet, slot) -> fleet.setState(slot,
+                Math.min(fleet.value(Fleet.CURRENT_FUEL, slot) + amount, fleet.value(Fleet.FUEL_CAPACITY, slot)),
+                fleet.value(Fleet.KILOMETERS_FLOWN, slot)));
+    }
+
+    // Used when replaying persisted state; bypasses fly/refuel so the result is exact
+    void restoreState(final double currentFuel, final double kilometersFlown) {
+        update((fleet, slot) -> {
+            if (currentFuel < 0 || currentFuel > fleet.value(Fleet.FUEL_CAPACITY, slot)) {
+                throw new IllegalArgumentException("Current fuel must be between 0 and capacity");
+            }
+            if (kilometersFlown < 0) {
+                throw new IllegalArgumentException("Kilometers flown cannot be negative");
+            }
+            fleet.setState(slot, currentFuel, kilometersFlown);
+        });
+    }
+
+    // Retries when the airplane was moved to another fleet before the lock was taken
+    private void update(final Fleet.Update update) {
+        while (!fleet.update(this, update)) {
+            Thread.onSpinWait();
+        }
+    }
 
-        if (currentFuel > fuelCapacity) {
-            currentFuel = fuelCapacity;
+    // All fields of this airplane as of one instant
+    FleetSnapshot snapshot() {
+        while (true) {
+            final Fleet current = fleet;
+            final long stamp = current.readLock();
+            try {
+                if (fleet == current) {
+                    final int index = slot;
+                    return new FleetSnapshot(new Airplane[]{this},
+                            new double[]{current.value(Fleet.FUEL_FOR_KILOMETER, index)},
+                            new double[]{current.value(Fleet.FUEL_CAPACITY, index)},
+                            new double[]{current.value(Fleet.CURRENT_FUEL, index)},
+                            new double[]{current.value(Fleet.KILOMETERS_FLOWN, index)});
+                }
+            } finally {
+                current.unlockRead(stamp);
+            }
         }
     }
 
+    private double read(final int column) {
+        while (true) {
+            final Fleet current = fleet;
+            final long stamp = current.tryOptimisticRead();
+            try {
+                final double value = current.value(column, slot);
+                if (current.validate(stamp) && fleet == current) {
+                    return value;
+                }
+            } catch (final ArrayIndexOutOfBoundsException e) {
+                // Fleet and slot were read mid-rebind; the locked read below sees them consistently
+            }
+
+            final long readStamp = current.readLock();
+            try {
+                if (fleet == current) {
+                    return current.value(column, slot);
+                }
+            } finally {
+                current.unlockRead(readStamp);
+            }
+        }
+    }
+
+    void bind(final Fleet fleet, final int slot) {
+        this.fleet = fleet;
+        this.slot = slot;
+    }
+
+    Fleet fleet() {
+        return fleet;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    // True while fly/refuel are written in place to this airplane's record in a mapped snapshot
+    boolean isMapped() {
+        return fleet.isMapped(this);
+    }
+
     public String getId() {
         return id;
     }
@@ -91,19 +174,19 @@ public class Airplane {
     }
 
     public double getFuelForKilometer() {
-        return fuelForKilometer;
+        return read(Fleet.FUEL_FOR_KILOMETER);
     }
 
     public double getFuelCapacity() {
-        return fuelCapacity;
+        return read(Fleet.FUEL_CAPACITY);
     }
 
     public double getCurrentFuel() {
-        return currentFuel;
+        return read(Fleet.CURRENT_FUEL);
     }
 
     public double getKilometersFlown() {
-        return kilometersFlown;
+        return read(Fleet.KILOMETERS_FLOWN);
     }
 
     @Override
@@ -111,8 +194,8 @@ public class Airplane {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Airplane airplane = (Airplane) o;
-        return Double.compare(airplane.fuelForKilometer, fuelForKilometer) == 0 &&
-                Double.compare(airplane.fuelCapacity, fuelCapacity) == 0 &&
+        return Double.compare(airplane.getFuelForKilometer(), getFuelForKilometer()) == 0 &&
+                Double.compare(airplane.getFuelCapacity(), getFuelCapacity()) == 0 &&
                 Objects.equals(id, airplane.id) &&
                 Objects.equals(model, airplane.model) &&
                 Objects.equals(manufacturer, airplane.manufacturer);
@@ -120,18 +203,19 @@ public class Airplane {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, model, manufacturer, fuelForKilometer, fuelCapacity);
+        return Objects.hash(id, model, manufacturer, getFuelForKilometer(), getFuelCapacity());
     }
 
     @Override
     public String toString() {
+        final FleetSnapshot state = snapshot();
         return String.format(
                 "Airplane{id='%s', model='%s', manufacturer=%s, fuel=%.1f/%.1fL, km=%.1f}",
                 this.id,
                 this.model,
                 this.manufacturer.getName(),
-                this.currentFuel,
-                this.fuelCapacity,
-                this.kilometersFlown);
+                state.currentFuel(0),
+                state.fuelCapacity(0),
+                state.kilometersFlown(0));
     }
 }
@@ -1,14 +1,41 @@
 package com.airport;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
+// Structural changes (add, remove, rename, status) synchronize on the airport; lookups and
+// iteration are lock-free. The airline list is a persistent vector: each change publishes a new
+// version that shares all untouched structure with the previous one, so getAirlines hands out the
+// current version as an immutable snapshot without copying. A skip list keeps the airlines
+// ordered by name alongside, so name-sorted exports walk it instead of sorting.
+//
+// Every change is stamped with a version from the airport's clock: the airport's own name and
+// status here, airlines when they join or are renamed, airplanes in their Fleet. Removals leave a
+// tombstone. Changes before the baseline, i.e. before the model was loaded, are not tracked.
 public class Airport {
-    private String name;
-    private final List<Airline> airlines;
-    private Status status;
+    // Oldest tombstones are dropped beyond this, raising the baseline to their version
+    static final int MAX_TOMBSTONES = 1 << 16;
+
+    // A removed airline (airplane null) or airplane, and when it was removed
+    record Tombstone(String airline, String airplane, long version) { }
+
+    private volatile String name;
+    private volatile PersistentVector<Airline> airlines = PersistentVector.empty();
+    private final Map<String, Airline> airlinesByName;
+    private final ConcurrentSkipListMap<String, Airline> airlinesSortedByName;
+    private volatile Status status;
     private final int maxAirlines;
+    private final VersionClock clock = new VersionClock();
+    private volatile long version;
+    private volatile long baseline = clock.current();
+    private final ArrayDeque<Tombstone> tombstones = new ArrayDeque<>();
 
     public enum Status {
         OPEN, CLOSED
@@ -19,7 +46,8 @@ public class Airport {
             throw new IllegalArgumentException("Max airlines must be positive");
         this.name = name;
         this.maxAirlines = maxAirlines;
-        this.airlines = new ArrayList<>();
+        this.airlinesByName = new ConcurrentHashMap<>();
+        this.airlinesSortedByName = new ConcurrentSkipListMap<>();
         this.status = Status.OPEN;
     }
 
@@ -29,20 +57,51 @@ public class Airport {
         }
     }
 
-    public void addAirline(final Airline airline) {
+    public synchronized void addAirline(final Airline airline) {
         checkStatus();
 
         if (airlines.size() >= maxAirlines) {
             throw new IllegalStateException("Airport at capacity: " + maxAirlines);
         }
+        if (airlinesByName.containsKey(airline.getName())) {
+            throw new IllegalArgumentException("Airline already exists: " + airline.getName());
+        }
 
-        airlines.add(airline);
+        airlines = airlines.append(airline);
+        airlinesByName.put(airline.getName(), airline);
+        airlinesSortedByName.put(airline.getName(), airline);
+        airline.setAirport(this, clock);
     }
 
-    public void removeAirline(final String name) {
+    public synchronized void removeAirline(final String name) {
         checkStatus();
 
-        airlines.removeIf(a -> a.getName().equals(name));
+        final Airline removed = airlinesByName.remove(name);
+        if (removed != null) {
+            airlines = airlines.without(airlines.indexOf(removed));
+            airlinesSortedByName.remove(name);
+            removed.setAirport(null, null);
+            tombstone(name, null);
+        }
+    }
+
+    // Called by Airline.updateName so the name index follows the rename
+    synchronized void renameAirline(final Airline airline, final String newName) {
+        final String oldName = airline.getName();
+        if (newName.equals(oldName)) {
+            return;
+        }
+        if (airlinesByName.containsKey(newName)) {
+            throw new IllegalArgumentException("Airline already exists: " + newName);
+        }
+
+        airlinesByName.put(newName, airline);
+        airlinesByName.remove(oldName);
+        airlinesSortedByName.put(newName, airline);
+        airlinesSortedByName.remove(oldName);
+        // A delta shows a rename as the old airline removed and the new one added in full
+        tombstone(oldName, null);
+        airline.setName(newName, clock.next());
     }
 
     public void updateName(final String newName) {
@@ -51,25 +110,119 @@ public class Airport {
         }
 
         this.name = newName;
+        version = clock.next();
     }
 
-    public void toggleStatus() {
+    public synchronized void toggleStatus() {
         this.status = (status == Status.OPEN) ? Status.CLOSED : Status.OPEN;
+        version = clock.next();
     }
 
-    public void setStatus(Status status) {
+    public synchronized void setStatus(Status status) {
         this.status = status;
+        version = clock.next();
+    }
+
+    // Identifies this model among others, whose versions may overlap with its own
+    String modelId() {
+        return clock.id();
+    }
+
+    // The latest version handed out; a delta from here on contains every later change
+    long currentVersion() {
+        return clock.current();
+    }
+
+    // Version of the last change to the airport's own name or status
+    long version() {
+        return version;
+    }
+
+    long baseline() {
+        return baseline;
+    }
+
+    // Declares the current state the starting point of change tracking, e.g. once loaded
+    void markBaseline() {
+        synchronized (tombstones) {
+            tombstones.clear();
+            baseline = clock.current();
+        }
+    }
+
+    void tombstone(final String airline, final String airplane) {
+        synchronized (tombstones) {
+            tombstones.addLast(new Tombstone(airline, airplane, clock.next()));
+            if (tombstones.size() > MAX_TOMBSTONES) {
+                baseline = Math.max(baseline, tombstones.removeFirst().version());
+            }
+        }
+    }
+
+    // Removals after the given version, oldest first
+    List<Tombstone> removedSince(final long since) {
+        final List<Tombstone> removed = new ArrayList<>();
+        synchronized (tombstones) {
+            for (final Tombstone tombstone : tombstones) {
+                if (tombstone.version() > since) {
+                    removed.add(tombstone);
+                }
+            }
+        }
+        return removed;
     }
 
     public Airline findAirline(final String name) {
-        return airlines.stream()
-                .filter(a -> a.getName().equals(name))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Airline not found: " + name));
+        final Airline airline = airlinesByName.get(name);
+        if (airline == null) {
+            throw new IllegalArgumentException("Airline not found: " + name);
+        }
+
+        return airline;
     }
 
+    // Immutable; later changes to the airport publish a new list and leave this one as it was
     public List<Airline> getAirlines() {
-        return List.copyOf(airlines);
+        return airlines;
+    }
+
+    List<Airline> airlines() {
+        return airlines;
+    }
+
+    // Deep copy with the same airlines, airplanes and state, e.g. for simulation runs and for patches
+    // that must not touch the original until they applied completely. Every field an airplane
+    // persists is copied; change tracking starts afresh in the copy.
+    public Airport copy() {
+        final Airport copy = new Airport(name, maxAirlines);
+        for (final Airline airline : airlines) {
+            final Airline target = new Airline(airline.getName(), airline.getMaxAirplanes());
+            final FleetSnapshot fleet = airline.snapshot();
+            for (int i = 0; i < fleet.size(); i++) {
+                final Airplane airplane = fleet.airplane(i);
+                target.addAirplane(new Airplane(airplane.getId(), airplane.getModel(), airplane.getManufacturer(),
+                        fleet.fuelForKilometer(i), fleet.fuelCapacity(i), fleet.currentFuel(i),
+                        fleet.kilometersFlown(i)));
+            }
+            copy.addAirline(target);
+        }
+        copy.setStatus(status);
+        return copy;
+    }
+
+    // Airlines in name order; like airlines(), iteration does not block structural changes
+    Collection<Airline> airlinesSortedByName() {
+        return Collections.unmodifiableCollection(airlinesSortedByName.values());
+    }
+
+    // The k airplanes of all airlines with the highest km, fuel or capacity, highest first
+    public List<FleetQuery.Match> top(final FleetQuery.Field field, final int k) {
+        return FleetRanking.top(this, field, k);
+    }
+
+    // The airplanes of all airlines whose km, fuel or capacity lies within [min, max], ascending
+    public List<FleetQuery.Match> range(final FleetQuery.Field field, final double min, final double max) {
+        return FleetRanking.range(this, field, min, max);
     }
 
     public String getName() {
@@ -0,0 +1,148 @@
+package com.airport;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+// Airports by key, one Shard each. The default airport keeps the files in the base directory,
+// where single-airport versions wrote them; every other airport has its own directory under
+// airports/. Shards are opened cheaply and load their state on first use, or all at once with
+// loadAll, which reads the snapshots in parallel.
+final class AirportRegistry {
+    static final String DEFAULT = "default";
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Path baseDir;
+    private final long compactThreshold;
+    private final Map<String, Shard> shards = new ConcurrentHashMap<>();
+    // Group commit interval of new shards while a session runs, 0 otherwise
+    private volatile long flushIntervalMillis;
+
+    AirportRegistry(final Path baseDir, final long compactThreshold) {
+        this.baseDir = baseDir;
+        this.compactThreshold = compactThreshold;
+    }
+
+    private Path directory(final String key) {
+        return key.equals(DEFAULT) ? baseDir : baseDir.resolve("airports").resolve(key);
+    }
+
+    boolean exists(final String key) {
+        return key.equals(DEFAULT) || Files.isDirectory(directory(key));
+    }
+
+    // The shard of an existing airport
+    Shard get(final String key) {
+        if (!KEY.matcher(key).matches() || !exists(key)) {
+            throw new IllegalArgumentException("Unknown airport: " + key);
+        }
+        return shard(key);
+    }
+
+    // The shard of an airport that new is about to create; its directory appears on first save
+    Shard create(final String key) {
+        if (!KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Airport keys may only contain letters, digits, _ and -: " + key);
+        }
+        return shard(key);
+    }
+
+    private Shard shard(final String key) {
+        return shards.computeIfAbsent(key, k -> {
+            final Shard shard = new Shard(k, directory(k), compactThreshold);
+            shard.journal().startGroupCommit(flushIntervalMillis);
+            return shard;
+        });
+    }
+
+    // Every airport with state on disk, the default first, then by key
+    List<String> keys() throws IOException {
+        final TreeSet<String> keys = new TreeSet<>();
+        final Path airports = baseDir.resolve("airports");
+        if (Files.isDirectory(airports)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(airports, Files::isDirectory)) {
+                for (final Path entry : entries) {
+                    final String key = entry.getFileName().toString();
+                    if (KEY.matcher(key).matches()) {
+                        keys.add(key);
+                    }
+                }
+            }
+        }
+        keys.remove(DEFAULT);
+        final List<String> ordered = new ArrayList<>(keys.size() + 1);
+        ordered.add(DEFAULT);
+        ordered.addAll(keys);
+        return ordered;
+    }
+
+    // Loads every airport that is not loaded yet, one snapshot per pool thread; returns how many were loaded
+    int loadAll(final int threads) throws IOException {
+        final List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (final String key : keys()) {
+            final Shard shard = shard(key);
+            if (!shard.isLoaded()) {
+                tasks.add(() -> shard.load() != null);
+            }
+        }
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        final long start = Metrics.start();
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            for (final Future<Boolean> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading airports", e);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Loading airports failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        Metrics.stop("registry.load", start);
+        return tasks.size();
+    }
+
+    void startGroupCommit(final long intervalMillis) {
+        flushIntervalMillis = intervalMillis;
+        for (final Shard shard : shards.values()) {
+            shard.journal().startGroupCommit(intervalMillis);
+        }
+    }
+
+    // Flushes every shard's pending entries; the first failure is rethrown after all were tried
+    void stopGroupCommit() throws IOException {
+        flushIntervalMillis = 0;
+        IOException failure = null;
+        for (final Shard shard : shards.values()) {
+            try {
+                shard.journal().stopGroupCommit();
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
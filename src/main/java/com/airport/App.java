@@ -1,10 +1,27 @@
 package com.airport;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import javax.management.JMException;
 
 public class App {
     private static final String HELP_MESSAGE = """
@@ -24,13 +41,53 @@ public class App {
               info airplane <airline> <id>
               refuel <airline> <id> [<amount>]
               fly <airline> <id> <kilometers>
+              bulk refuel [<threshold>]         - Fill every airplane below threshold*capacity (default 1)
+              bulk fly <file|->                 - Fly a CSV schedule of airline,id,km legs
+              simulate <hours> [<seed>]         - Fly the whole fleet on a copy and report legs/sec
               list
               list <airline>
-              export <airportSort> <airlineSort>
+              export <airportSort> <airlineSort> [<file>]
+              export --since <version> [<file>] - Only what changed after <version>, as a patch
+            export <airportSort> <airlineSort> <dir>/ - One file per airline plus an airport.json manifest
+              import <file>
+              import <dir>                      - Read a partitioned export
+            import --patch <file>             - Apply a patch written by export --since
+              query list [where <condition>...]  - Airplanes matching all conditions
+              query count [by <group>] [where <condition>...]
+              query <sum|avg|min|max> <field> [by <group>] [where <condition>...]
+              top <km|fuel|capacity> <k> [<airline>]          - The k highest airplanes, highest first
+              range <km|fuel|capacity> <min> <max> [<airline>] - Airplanes within [min, max], ascending
+              batch <file|-> [<checkpointEvery>] - Run one command per line from a file or stdin;
+                                                  only errors and a summary are printed
+              airports                          - List airports and whether they are loaded
+              airports load                     - Load every airport in parallel
+              @<airport> <command> [args]       - Run a command on another airport than the default
+              use <airport>                     - Address later commands to an airport (interactive only)
+              stats [json|reset]                - Latency percentiles and I/O counters of this process
               help
               help <command>
+              serve                             - Run as a daemon keeping the airport resident (command line only)
               exit (interactive mode only)
-            Data is automatically saved after each operation and loaded on start.  
+            Each operation is appended to a journal and replayed on start; the journal is
+            compacted into the airlines.bin snapshot once it grows past airport.journal.maxBytes.
+            Every airport keeps its own snapshot and journal, loaded on first use; 'new' under a
+            new @<airport> creates one. Airports other than the default live in airports/<airport>/.
+            JSON is used only by export/import (default file: airlines.json). Exports to a file ending
+            in .gz are gzip-compressed as they stream; imports recognize gzip files by their content.
+            Every export prints the version it reflects; export --since that version later writes only
+            the airlines and airplanes added, changed or removed since. Versions from before the airport
+            was loaded or imported cannot be followed, and such a patch carries the full airport.
+            A partitioned export into the directory of an earlier one rewrites only the files of airlines
+            changed since then; airline files are written and read in parallel.
+            A batch writes its journal entries once at the end, or every <checkpointEvery> lines.
+            Interactive and daemon sessions write the journal at most every airport.journal.flushMillis
+            (default 200) and on exit; JSON exports are written to a temp file and renamed into place.
+            Metrics are collected unless -Dairport.metrics=false; -Dairport.metrics.jmx=true also
+            publishes them as the MXBean com.airport:type=Metrics.
+            While a 'serve' daemon is running, every invocation forwards its command to it.
+            Query fields: fuelPerKm, capacity, fuel, km, fuelRatio (fuel/capacity), fuelNeeded
+            (capacity-fuel); groups: airline, manufacturer, model. Conditions look like km>1000,
+            fuelRatio<0.2 or manufacturer=Boeing, using <, <=, >, >=, = or !=.
             """;
 
     private static final String HELP_NEW = "new <name> <maxAirlines>";
@@ -53,12 +110,79 @@ public class App {
             """;
     private static final String HELP_REFUEL = "refuel <airline> <id> [<amount>]";
     private static final String HELP_FLY = "fly <airline> <id> <kilometers>";
+    private static final String HELP_BULK = "bulk refuel [<threshold>]\nbulk fly <file|->";
+    private static final String HELP_SIMULATE = "simulate <hours> [<seed>]";
     private static final String HELP_LIST = "list\nlist <airline>";
-    private static final String HELP_EXPORT = "export <airportSort> <airlineSort>";
+    private static final String HELP_EXPORT = """
+            export <airportSort> <airlineSort> [<file>]
+            export --since <version> [<file>]
+            """;
+    private static final String HELP_IMPORT = "import <file>\nimport --patch <file>";
+    private static final String HELP_QUERY = """
+            query list [where <condition>...]
+            query count [by <group>] [where <condition>...]
+            query <sum|avg|min|max> <field> [by <group>] [where <condition>...]
+            """;
+    private static final String HELP_TOP = "top <km|fuel|capacity> <k> [<airline>]";
+    private static final String HELP_RANGE = "range <km|fuel|capacity> <min> <max> [<airline>]";
+    private static final String HELP_BATCH = "batch <file|-> [<checkpointEvery>]";
+    private static final String HELP_AIRPORTS = "airports\nairports load";
+    private static final String HELP_USE = "use <airport>";
+    private static final String HELP_STATS = "stats\nstats json\nstats reset";
+
+    // How a command uses its airport's lock: new and import replace the model, batch locks per line
+    // instead and airports reads no model
+    private enum Access {
+        SHARED, EXCLUSIVE, NONE
+    }
+
+    // Dispatch table: command words resolve through COMMAND_TABLE with one hash lookup
+    private enum Command {
+        NEW(HELP_NEW, Access.EXCLUSIVE),
+        UPDATE(HELP_UPDATE, Access.SHARED),
+        ADD(HELP_ADD, Access.SHARED),
+        REMOVE(HELP_REMOVE, Access.SHARED),
+        INFO(HELP_INFO, Access.SHARED),
+        REFUEL(HELP_REFUEL, Access.SHARED),
+        FLY(HELP_FLY, Access.SHARED),
+        BULK(HELP_BULK, Access.SHARED),
+        SIMULATE(HELP_SIMULATE, Access.SHARED),
+        LIST(HELP_LIST, Access.SHARED),
+        EXPORT(HELP_EXPORT, Access.SHARED),
+        IMPORT(HELP_IMPORT, Access.EXCLUSIVE),
+        QUERY(HELP_QUERY, Access.SHARED),
+        TOP(HELP_TOP, Access.SHARED),
+        RANGE(HELP_RANGE, Access.SHARED),
+        BATCH(HELP_BATCH, Access.NONE),
+        AIRPORTS(HELP_AIRPORTS, Access.NONE),
+        STATS(HELP_STATS, Access.SHARED),
+        HELP("help\nhelp <command>", Access.SHARED);
+
+        private final String help;
+        private final Access access;
+        private final String metric;
+
+        Command(final String help, final Access access) {
+            this.help = help;
+            this.access = access;
+            this.metric = "command." + name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private enum Subcommand {
+        AIRPORT, STATUS, AIRLINE, AIRPLANE, JSON, RESET, REFUEL, FLY, LOAD, UNKNOWN
+    }
+
+    private static final Map<String, Command> COMMAND_TABLE = table(Command.values());
+    private static final Map<String, Subcommand> SUBCOMMAND_TABLE = table(Subcommand.values());
 
-    private static Airport airport = new Airport("Global Airport", 10); // Default capacity
     private static final String APP_DIR = "airport-app";
-    private static final Path DATA_FILE = getDataFilePath();
+    private static final Path BASE_DIR = getDataDirPath();
+    private static final Path SOCKET_FILE = BASE_DIR.resolve("airport.sock");
+    private static final AirportRegistry REGISTRY =
+            new AirportRegistry(BASE_DIR, Long.getLong("airport.journal.maxBytes", 1 << 20));
+    // Long-running sessions batch journal writes; 0 writes every command through immediately
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("airport.journal.flushMillis", 200);
 
     private static Path getDataBaseDir() {
         final String os = System.getProperty("os.name").toLowerCase();
@@ -71,40 +195,150 @@ public class App {
         return Paths.get(System.getProperty("user.home"), ".local", "state", APP_DIR);
     }
 
-    private static Path getDataFilePath() {
+    private static Path getDataDirPath() {
         final Path baseDir = getDataBaseDir();
         try {
             Files.createDirectories(baseDir);
         } catch (final IOException e) {
             System.err.println("Warning: Could not create data directory - " + e.getMessage());
         }
-        return baseDir.resolve("airlines.json");
+        return baseDir;
+    }
+
+    public static void main(final String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("serve")) {
+            runServer();
+            return;
+        }
+        final Daemon.Connection connection = Daemon.connect(SOCKET_FILE);
+        if (connection != null) {
+            runClient(connection, args);
+            return;
+        }
+
+        if (args.length == 0) {
+            startSession();
+            try {
+                runInteractiveMode("Entering interactive mode.", App::processCommand);
+            } catch (final IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            } finally {
+                stopSession();
+            }
+        } else {
+            processCommand(args);
+        }
     }
 
-    static {
+    private static void runServer() {
         try {
-            if (Files.exists(DATA_FILE)) {
-                airport = DataManager.importData(DATA_FILE);
+            // Checked before loading, which may already write the state a running daemon owns
+            if (Daemon.isServing(SOCKET_FILE)) {
+                System.err.println("Error: A daemon is already serving on " + SOCKET_FILE);
+                return;
             }
+            // The daemon pays for loading once, so every airport is resident before the first client
+            REGISTRY.loadAll(Runtime.getRuntime().availableProcessors());
+            System.out.println("Serving " + REGISTRY.keys().size() + " airports on " + SOCKET_FILE);
         } catch (final IOException e) {
             System.err.println("Warning: Could not load data - " + e.getMessage());
         }
+        startSession();
+        try {
+            Daemon.serve(SOCKET_FILE, App::processCommand);
+        } catch (final IOException e) {
+            System.err.println("Error: Daemon stopped - " + e.getMessage());
+        } finally {
+            stopSession();
+        }
     }
 
-    public static void main(final String[] args) {
-        if (args.length == 0) {
-            runInteractiveMode();
-        } else {
-            processCommand(args);
+    // Setup shared by the long-running modes, interactive and daemon
+    private static void startSession() {
+        REGISTRY.startGroupCommit(FLUSH_INTERVAL_MILLIS);
+        // Covers Ctrl-C and kill, which skip the finally blocks of the session loops
+        Runtime.getRuntime().addShutdownHook(new Thread(App::stopSession, "journal-shutdown"));
+        if (Metrics.ENABLED && Boolean.getBoolean("airport.metrics.jmx")) {
+            try {
+                Metrics.registerMBean();
+            } catch (final JMException e) {
+                System.err.println("Warning: Could not register metrics MBean - " + e.getMessage());
+            }
+        }
+    }
+
+    private static void stopSession() {
+        try {
+            REGISTRY.stopGroupCommit();
+        } catch (final IOException e) {
+            System.err.println("Warning: Could not write journal - " + e.getMessage());
+        }
+    }
+
+    // Forwards commands to a running daemon instead of loading the state in this JVM
+    private static void runClient(final Daemon.Connection connection, final String[] args) {
+        try (connection) {
+            final int script = scriptArgument(args);
+            if (script > 0) {
+                sendScript(connection, args, script);
+            } else if (args.length > 0) {
+                connection.send(args, System.out);
+            } else {
+                runInteractiveMode("Connected to daemon.", commandArgs -> connection.send(commandArgs, System.out));
+            }
+        } catch (final IOException e) {
+            System.err.println("Error: Lost connection to daemon - " + e.getMessage());
+        }
+    }
+
+    // Index of the file argument of batch and bulk fly, or -1 when the command reads no file
+    private static int scriptArgument(final String[] args) {
+        final int first = args.length > 0 && args[0].startsWith("@") ? 1 : 0;
+        if (args.length > first + 1 && args[first].equalsIgnoreCase("batch")) {
+            return first + 1;
+        }
+        if (args.length > first + 2 && args[first].equalsIgnoreCase("bulk")
+                && args[first + 1].equalsIgnoreCase("fly")) {
+            return first + 2;
         }
+        return -1;
     }
 
-    private static void runInteractiveMode() {
+    // The daemon has its own working directory and stdin, so the script is handed over by absolute path
+    private static void sendScript(final Daemon.Connection connection, final String[] args, final int script)
+            throws IOException {
+        final String[] forwarded = args.clone();
+        Path spooled = null;
+        try {
+            if (args[script].equals("-")) {
+                spooled = Files.createTempFile("airport-script", ".txt");
+                Files.copy(System.in, spooled, StandardCopyOption.REPLACE_EXISTING);
+                forwarded[script] = spooled.toString();
+            } else {
+                forwarded[script] = Paths.get(args[script]).toAbsolutePath().toString();
+            }
+            connection.send(forwarded, System.out);
+        } finally {
+            if (spooled != null) {
+                Files.deleteIfExists(spooled);
+            }
+        }
+    }
+
+    private interface CommandRunner {
+        void run(String[] args) throws IOException;
+    }
+
+    // 'use <airport>' is handled here rather than by the command table, so that every session,
+    // including each daemon client, has its own current airport
+    private static void runInteractiveMode(final String banner, final CommandRunner runner) throws IOException {
+        String current = null;
         try (Scanner scanner = new Scanner(System.in)) {
-            System.out.println("Entering interactive mode. Type 'help' for commands or 'exit' to quit.");
+            System.out.println(banner + " Type 'help' for commands or 'exit' to quit.");
             while (true) {
-                System.out.print("> ");
-                final String input = scanner.nextLine().trim();
+                System.out.print(current != null ? current + "> " : "> ");
+                // End of input counts as exit, so piped sessions still flush on the way out
+                final String input = scanner.hasNextLine() ? scanner.nextLine().trim() : "exit";
                 if (input.equalsIgnoreCase("exit")) {
                     System.out.println("Exiting interactive mode.");
                     break;
@@ -112,231 +346,677 @@ public class App {
                 if (input.isEmpty()) {
                     continue;
                 }
-                final String[] args = splitCommand(input);
-                processCommand(args);
+                final String[] args;
+                try {
+                    args = splitCommand(input);
+                } catch (final IllegalArgumentException e) {
+                    System.out.println("Error: " + e.getMessage());
+                    continue;
+                }
+                if (args[0].equalsIgnoreCase("use")) {
+                    if (args.length != 2) {
+                        System.out.println("Error: Usage: " + HELP_USE);
+                        continue;
+                    }
+                    try {
+                        // Rejects malformed and unknown keys now, keeping the previous selection
+                        REGISTRY.get(args[1]);
+                    } catch (final IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        continue;
+                    }
+                    current = args[1].equals(AirportRegistry.DEFAULT) ? null : args[1];
+                    System.out.println("Using airport " + args[1]);
+                    continue;
+                }
+                if (current != null && !args[0].startsWith("@")) {
+                    final String[] addressed = new String[args.length + 1];
+                    addressed[0] = "@" + current;
+                    System.arraycopy(args, 0, addressed, 1, args.length);
+                    runner.run(addressed);
+                    continue;
+                }
+                runner.run(args);
             }
         }
     }
 
     private static String[] splitCommand(final String input) {
-        return input.split("\\s+(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
+        final long start = Metrics.start();
+        final String[] args = Tokenizer.tokenize(input);
+        Metrics.stop("parse", start);
+        return args;
+    }
+
+    private static <E extends Enum<E>> Map<String, E> table(final E[] values) {
+        final Map<String, E> table = new HashMap<>();
+        for (final E value : values) {
+            table.put(value.name().toLowerCase(Locale.ROOT), value);
+        }
+        return table;
+    }
+
+    // Lowercase input, the common case, resolves without allocating; other spellings are folded once
+    private static <E> E lookup(final Map<String, E> table, final String word) {
+        final E value = table.get(word);
+        return value != null ? value : table.get(word.toLowerCase(Locale.ROOT));
+    }
+
+    private static Subcommand subcommand(final String word) {
+        final Subcommand subcommand = lookup(SUBCOMMAND_TABLE, word);
+        return subcommand != null ? subcommand : Subcommand.UNKNOWN;
     }
 
     private static void processCommand(final String[] args) {
+        processCommand(args, System.out);
+    }
+
+    private static void processCommand(final String[] args, final PrintStream out) {
+        final int first = args.length > 0 && args[0].startsWith("@") ? 1 : 0;
+        if (args.length == first) {
+            return;
+        }
+        final long start = Metrics.start();
+        final Command command = lookup(COMMAND_TABLE, args[first]);
         try {
-            switch (args[0].toLowerCase()) {
-                case "new" -> handleNew(args);
-                case "update" -> handleUpdate(args);
-                case "add" -> handleAdd(args);
-                case "remove" -> handleRemove(args);
-                case "info" -> handleInfo(args);
-                case "refuel" -> handleRefuel(args);
-                case "fly" -> handleFly(args);
-                case "list" -> handleList(args);
-                case "export" -> handleExport(args);
-                case "help" -> handleHelp(args);
-                default -> {
-                    System.out.println("Unknown command: " + args[0]);
-                    printHelp();
-                }
+            if (command == null) {
+                out.println("Unknown command: " + args[first]);
+                printHelp(out);
+            } else {
+                final Shard shard = target(command, first == 1 ? args[0].substring(1) : AirportRegistry.DEFAULT);
+                execute(command, shard, first == 1 ? Arrays.copyOfRange(args, 1, args.length) : args, out);
+                shard.compactIfNeeded();
             }
         } catch (final Exception e) {
-            System.out.println("Error: " + e.getMessage());
+            out.println("Error: " + e.getMessage());
+        }
+        Metrics.stop(command != null ? command.metric : "command.unknown", start);
+    }
+
+    // Commands address the default airport unless prefixed with @<airport>; only new may name one
+    // that does not exist yet. Resolving a shard does not load it, the handlers do on first access.
+    private static Shard target(final Command command, final String key) {
+        return command == Command.NEW ? REGISTRY.create(key) : REGISTRY.get(key);
+    }
+
+    private static void execute(final Command command, final Shard shard, final String[] args,
+                                final PrintStream out) throws IOException {
+        if (command.access == Access.NONE) {
+            dispatch(command, shard, args, out);
+            return;
+        }
+        final Lock lock = command.access == Access.EXCLUSIVE ? shard.lock().writeLock() : shard.lock().readLock();
+        lock.lock();
+        try {
+            dispatch(command, shard, args, out);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void dispatch(final Command command, final Shard shard, final String[] args,
+                                 final PrintStream out) throws IOException {
+        switch (command) {
+            case NEW -> handleNew(shard, args, out);
+            case UPDATE -> handleUpdate(shard, args, out);
+            case ADD -> handleAdd(shard, args, out);
+            case REMOVE -> handleRemove(shard, args, out);
+            case INFO -> handleInfo(shard, args, out);
+            case REFUEL -> handleRefuel(shard, args, out);
+            case FLY -> handleFly(shard, args, out);
+            case BULK -> handleBulk(shard, args, out);
+            case SIMULATE -> handleSimulate(shard, args, out);
+            case LIST -> handleList(shard, args, out);
+            case EXPORT -> handleExport(shard, args, out);
+            case IMPORT -> handleImport(shard, args, out);
+            case QUERY -> handleQuery(shard, args, out);
+            case TOP -> handleTop(shard, args, out);
+            case RANGE -> handleRange(shard, args, out);
+            case BATCH -> handleBatch(shard, args, out);
+            case AIRPORTS -> handleAirports(args, out);
+            case STATS -> handleStats(args, out);
+            case HELP -> handleHelp(args, out);
         }
     }
 
-    private static void printHelp() {
-        System.out.println(HELP_MESSAGE);
+    private static void printHelp(final PrintStream out) {
+        out.println(HELP_MESSAGE);
+    }
+
+    private interface AirlineAction {
+        void run(Airline airline) throws IOException;
     }
 
-    private static void saveData() throws IOException {
-        DataManager.exportData(airport, DATA_FILE, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+    // Changes to an airline are applied and journaled under the airline's monitor, so concurrent
+    // clients journal them in the order they took effect. Changes that also touch the airline
+    // index nest the airport's monitor inside; the order is always airline, then airport.
+    private static void mutateAirline(final Shard shard, final String name, final AirlineAction action)
+            throws IOException {
+        final Airport airport = shard.airport();
+        while (true) {
+            final long start = Metrics.start();
+            final Airline airline = airport.findAirline(name);
+            Metrics.stop("airline.lookup", start);
+            synchronized (airline) {
+                if (airport.findAirline(name) == airline) {
+                    final long mutation = Metrics.start();
+                    action.run(airline);
+                    Metrics.stop("airline.mutation", mutation);
+                    return;
+                }
+            }
+        }
     }
 
-    private static void handleNew(String[] args) throws IOException {
+    // Writes in place reach the mapped snapshot at once, so every earlier change must be in the journal
+    // before one: otherwise a crash could keep a later flight but lose, say, a buffered removal before
+    // it. This holds for process crashes; after an OS crash, the page cache may write either file first.
+    private static void flushBeforeInPlaceWrite(final Shard shard) throws IOException {
+        if (shard.isMapped()) {
+            shard.journal().flush();
+        }
+    }
+
+    private static void recordState(final Shard shard, final String airline, final Airplane airplane)
+            throws IOException {
+        if (airplane.isMapped()) {
+            // Already written in place to the airplane's record in the mapped snapshot
+            return;
+        }
+        shard.record(Journal.Op.AIRPLANE_STATE, airline, airplane.getId(),
+                Double.toString(airplane.getCurrentFuel()), Double.toString(airplane.getKilometersFlown()));
+    }
+
+    private static void handleNew(final Shard shard, final String[] args, final PrintStream out) throws IOException {
         if (args.length != 3) {
             throw new IllegalArgumentException("Usage: " + HELP_NEW);
         }
-        airport = new Airport(args[1], Integer.parseInt(args[2]));
-        saveData();
-        System.out.println("Created new airport: " + args[1] + " (Max airlines: " + args[2] + ")");
+        shard.replace(new Airport(args[1], Integer.parseInt(args[2])));
+        out.println("Created new airport: " + args[1] + " (Max airlines: " + args[2] + ")");
     }
 
-    private static void handleUpdate(final String[] args) throws IOException {
+    private static void handleUpdate(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        final Airport airport = shard.airport();
         if (args.length < 2) {
             throw new IllegalArgumentException("Usage: " + HELP_UPDATE);
         }
-        switch (args[1].toLowerCase()) {
-            case "airport" -> {
+        switch (subcommand(args[1])) {
+            case AIRPORT -> {
                 if (args.length != 3) throw new IllegalArgumentException("Usage: update airport <newName>");
-                airport.updateName(args[2]);
-                saveData();
-                System.out.println("Renamed airport to: " + args[2]);
+                synchronized (airport) {
+                    airport.updateName(args[2]);
+                    shard.record(Journal.Op.AIRPORT_RENAME, args[2]);
+                }
+                out.println("Renamed airport to: " + args[2]);
             }
-            case "status" -> {
+            case STATUS -> {
                 if (args.length != 2) throw new IllegalArgumentException("Usage: update status");
-                airport.toggleStatus();
-                saveData();
-                System.out.println("Airport status updated to: " + airport.getStatus());
+                final Airport.Status status;
+                synchronized (airport) {
+                    airport.toggleStatus();
+                    status = airport.getStatus();
+                    shard.record(Journal.Op.AIRPORT_STATUS, status.name());
+                }
+                out.println("Airport status updated to: " + status);
             }
-            case "airline" -> {
+            case AIRLINE -> {
                 if (args.length != 4) throw new IllegalArgumentException("Usage: update airline <oldName> <newName>");
-                airport.findAirline(args[2]).updateName(args[3]);
-                saveData();
-                System.out.println("Renamed airline " + args[2] + " to " + args[3]);
+                mutateAirline(shard, args[2], airline -> {
+                    synchronized (airport) {
+                        airline.updateName(args[3]);
+                        shard.record(Journal.Op.AIRLINE_RENAME, args[2], args[3]);
+                    }
+                });
+                out.println("Renamed airline " + args[2] + " to " + args[3]);
             }
             default -> throw new IllegalArgumentException("Unknown subcommand: " + args[1]);
         }
     }
 
-    private static void handleAdd(final String[] args) throws IOException {
+    private static void handleAdd(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        final Airport airport = shard.airport();
         if (args.length < 2) {
             throw new IllegalArgumentException("Usage: " + HELP_ADD);
         }
-        switch (args[1].toLowerCase()) {
-            case "airline" -> {
+        switch (subcommand(args[1])) {
+            case AIRLINE -> {
                 if (args.length != 4) {
                     throw new IllegalArgumentException("Usage: add airline <name> <maxAirplanes>");
                 }
                 final Airline airline = new Airline(args[2], Integer.parseInt(args[3]));
-                airport.addAirline(airline);
-                saveData();
-                System.out.println("Added airline: " + args[2] + " (Max airplanes: " + args[3] + ")");
+                // Held until journaled, so no change to the new airline can be journaled before it
+                synchronized (airline) {
+                    synchronized (airport) {
+                        airport.addAirline(airline);
+                        shard.record(Journal.Op.AIRLINE_ADD, args[2], args[3]);
+                    }
+                }
+                out.println("Added airline: " + args[2] + " (Max airplanes: " + args[3] + ")");
             }
-            case "airplane" -> {
+            case AIRPLANE -> {
                 if (args.length != 9) {
                     throw new IllegalArgumentException(
                             "Usage: add airplane <airline> <id> <model> <manufacturer> <country> <fuelPerKm> <capacity>");
                 }
-                final Airline airline = airport.findAirline(args[2]);
-                final Manufacturer manufacturer = new Manufacturer(args[5], args[6]);
+                final Manufacturer manufacturer = Manufacturer.of(args[5], args[6]);
                 final Airplane airplane = new Airplane(
                         args[3], args[4], manufacturer, Double.parseDouble(args[7]), Double.parseDouble(args[8]));
-                airline.addAirplane(airplane);
-                saveData();
-                System.out.println("Added to " + args[2] + ": " + airplane);
+                mutateAirline(shard, args[2], airline -> {
+                    airline.addAirplane(airplane);
+                    shard.record(Journal.Op.AIRPLANE_ADD,
+                            args[2], args[3], args[4], args[5], args[6], args[7], args[8]);
+                });
+                out.println("Added to " + args[2] + ": " + airplane);
             }
             default -> throw new IllegalArgumentException("Unknown subcommand: " + args[1]);
         }
     }
 
-    private static void handleRemove(final String[] args) throws IOException {
+    private static void handleRemove(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        final Airport airport = shard.airport();
         if (args.length < 2) {
             throw new IllegalArgumentException("Usage: " + HELP_REMOVE);
         }
-        switch (args[1].toLowerCase()) {
-            case "airline" -> {
+        switch (subcommand(args[1])) {
+            case AIRLINE -> {
                 if (args.length != 3) throw new IllegalArgumentException("Usage: remove airline <name>");
-                airport.removeAirline(args[2]);
-                saveData();
-                System.out.println("Removed airline: " + args[2]);
+                mutateAirline(shard, args[2], airline -> {
+                    synchronized (airport) {
+                        airport.removeAirline(args[2]);
+                        shard.record(Journal.Op.AIRLINE_REMOVE, args[2]);
+                    }
+                });
+                out.println("Removed airline: " + args[2]);
             }
-            case "airplane" -> {
+            case AIRPLANE -> {
                 if (args.length != 4) throw new IllegalArgumentException("Usage: remove airplane <airline> <id>");
-                airport.findAirline(args[2]).removeAirplane(args[3]);
-                saveData();
-                System.out.println("Removed airplane " + args[3] + " from " + args[2]);
+                mutateAirline(shard, args[2], airline -> {
+                    airline.removeAirplane(args[3]);
+                    shard.record(Journal.Op.AIRPLANE_REMOVE, args[2], args[3]);
+                });
+                out.println("Removed airplane " + args[3] + " from " + args[2]);
             }
             default -> throw new IllegalArgumentException("Unknown subcommand: " + args[1]);
         }
     }
 
-    private static void handleInfo(final String[] args) {
+    private static void handleInfo(final Shard shard, final String[] args, final PrintStream out) {
+        final Airport airport = shard.airport();
         if (args.length < 2) {
             throw new IllegalArgumentException("Usage: " + HELP_INFO);
         }
-        switch (args[1].toLowerCase()) {
-            case "airline" -> {
+        switch (subcommand(args[1])) {
+            case AIRLINE -> {
                 if (args.length != 3) throw new IllegalArgumentException("Usage: info airline <name>");
-                System.out.println(airport.findAirline(args[2]));
+                out.println(airport.findAirline(args[2]));
             }
-            case "airplane" -> {
+            case AIRPLANE -> {
                 if (args.length != 4) throw new IllegalArgumentException("Usage: info airplane <airline> <id>");
-                System.out.println(airport.findAirline(args[2]).findAirplane(args[3]));
+                out.println(airport.findAirline(args[2]).findAirplane(args[3]));
             }
             default -> throw new IllegalArgumentException("Unknown subcommand: " + args[1]);
         }
     }
 
-    private static void handleRefuel(final String[] args) throws IOException {
+    private static void handleRefuel(final Shard shard, final String[] args, final PrintStream out) throws IOException {
         if (args.length < 3 || args.length > 4) {
             throw new IllegalArgumentException("Usage: " + HELP_REFUEL);
         }
-        final Airplane airplane = airport.findAirline(args[1]).findAirplane(args[2]);
-        final double amount = args.length == 4 ? Double.parseDouble(args[3]) : airplane.getFuelCapacity() - airplane.getCurrentFuel();
-        airplane.refuel(amount);
-        saveData();
-        System.out.println(String.format("Refueled %s in %s by %.1f", args[2], args[1], amount));
+        mutateAirline(shard, args[1], airline -> {
+            final Airplane airplane = airline.findAirplane(args[2]);
+            final double amount = args.length == 4
+                    ? Double.parseDouble(args[3]) : airplane.getFuelCapacity() - airplane.getCurrentFuel();
+            flushBeforeInPlaceWrite(shard);
+            airplane.refuel(amount);
+            recordState(shard, args[1], airplane);
+            out.println(String.format("Refueled %s in %s by %.1f", args[2], args[1], amount));
+        });
     }
 
-    private static void handleFly(final String[] args) throws IOException {
+    private static void handleFly(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        final Airport airport = shard.airport();
         if (args.length != 4) {
             throw new IllegalArgumentException("Usage: " + HELP_FLY);
         }
         if (airport.getStatus() == Airport.Status.CLOSED) {
             throw new IllegalStateException("Airport is closed");
         }
-        final Airline airline = airport.findAirline(args[1]);
-        if (!airline.isOperational()) {
-            throw new IllegalStateException("Airline " + args[1] + " is not operational (no airplanes)");
+        mutateAirline(shard, args[1], airline -> {
+            if (!airline.isOperational()) {
+                throw new IllegalStateException("Airline " + args[1] + " is not operational (no airplanes)");
+            }
+            final Airplane airplane = airline.findAirplane(args[2]);
+            flushBeforeInPlaceWrite(shard);
+            airplane.fly(Double.parseDouble(args[3]));
+            recordState(shard, args[1], airplane);
+        });
+        out.println(String.format("Flew %s in %s for %s km", args[2], args[1], args[3]));
+    }
+
+    // Airlines are processed in parallel; each airline's share is applied and journaled under its
+    // monitor like a single command, and the journal is written once for the whole operation
+    private static void handleBulk(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        if (args.length < 2) throw new IllegalArgumentException("Usage: " + HELP_BULK);
+        final FleetBulk.Applier applier = (name, work) -> mutateAirline(shard, name, airline -> {
+            flushBeforeInPlaceWrite(shard);
+            for (final Airplane changed : work.run(airline)) {
+                recordState(shard, name, changed);
+            }
+        });
+
+        final FleetBulk.Report report;
+        final List<FleetBulk.Failure> failures = new ArrayList<>();
+        switch (subcommand(args[1])) {
+            case REFUEL -> {
+                if (args.length > 3) throw new IllegalArgumentException("Usage: bulk refuel [<threshold>]");
+                final double threshold = args.length == 3 ? Double.parseDouble(args[2]) : 1.0;
+                shard.journal().buffer();
+                try {
+                    report = FleetBulk.refuelAll(shard.airport(), threshold, applier);
+                } finally {
+                    shard.journal().unbuffer();
+                }
+                failures.addAll(report.failures());
+                out.println("Refueled " + report.succeeded() + " of " + report.attempted() + " airplanes");
+            }
+            case FLY -> {
+                if (args.length != 3) throw new IllegalArgumentException("Usage: bulk fly <file|->");
+                final List<FleetBulk.Leg> legs;
+                try (BufferedReader reader = args[2].equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : Files.newBufferedReader(Paths.get(args[2]))) {
+                    legs = FleetBulk.readLegs(reader, failures);
+                }
+                final int unparsed = failures.size();
+                shard.journal().buffer();
+                try {
+                    report = FleetBulk.fly(shard.airport(), legs, applier);
+                } finally {
+                    shard.journal().unbuffer();
+                }
+                failures.addAll(report.failures());
+                failures.sort(Comparator.comparingInt(FleetBulk.Failure::line));
+                out.println("Flew " + report.succeeded() + " of " + (report.attempted() + unparsed) + " legs");
+            }
+            default -> throw new IllegalArgumentException("Usage: " + HELP_BULK);
+        }
+        failures.forEach(out::println);
+    }
+
+    // Runs on a copy so that exploring scenarios never changes the journaled state
+    private static void handleSimulate(final Shard shard, final String[] args, final PrintStream out) {
+        final Airport airport = shard.airport();
+        if (args.length < 2 || args.length > 3) throw new IllegalArgumentException("Usage: " + HELP_SIMULATE);
+        final long seed = args.length == 3 ? Long.parseLong(args[2]) : 42;
+        final FlightSimulation.Config config = new FlightSimulation.Config(seed, Double.parseDouble(args[1]));
+        final FlightSimulation.Report report = FlightSimulation.run(airport.copy(), config);
+        out.println(String.format("Simulated %.1f h of %s (seed %d)", config.hours(), airport.getName(), seed));
+        for (final FlightSimulation.AirlineResult result : report.airlines()) {
+            out.println(String.format("  %s: %d legs, %d refuels, %.1f km%s", result.airline(), result.legs(),
+                    result.refuels(), result.kilometers(),
+                    result.grounded() > 0 ? ", " + result.grounded() + " grounded" : ""));
         }
-        airline.findAirplane(args[2]).fly(Double.parseDouble(args[3]));
-        saveData();
-        System.out.println(String.format("Flew %s in %s for %s km", args[2], args[1], args[3]));
+        out.println(String.format("Total: %d legs, %d refuels, %.1f km in %.1f ms (%.0f legs/sec)", report.legs(),
+                report.refuels(), report.kilometers(), report.elapsedNanos() / 1e6, report.legsPerSecond()));
     }
 
-    private static void handleList(final String[] args) {
+    private static void handleList(final Shard shard, final String[] args, final PrintStream out) {
+        final Airport airport = shard.airport();
         if (args.length == 1) {
             final var airlines = airport.getAirlines();
             if (airlines.isEmpty()) {
-                System.out.println("No airlines in the airport.");
+                out.println("No airlines in the airport.");
                 return;
             }
-            System.out.println(airport);
-            airlines.forEach(a -> System.out.println("  " + a));
+            out.println(airport);
+            airlines.forEach(a -> out.println("  " + a));
             return;
         }
         if (args.length == 2) {
             final Airline airline = airport.findAirline(args[1]);
             final var airplanes = airline.getAirplanes();
             if (airplanes.isEmpty()) {
-                System.out.println("No airplanes in " + args[1] + ".");
+                out.println("No airplanes in " + args[1] + ".");
                 return;
             }
-            System.out.println(airline);
-            airplanes.forEach(a -> System.out.println("  " + a));
+            out.println(airline);
+            airplanes.forEach(a -> out.println("  " + a));
             return;
         }
         throw new IllegalArgumentException("Usage: " + HELP_LIST);
     }
 
-    private static void handleExport(final String[] args) throws IOException {
-        if (args.length != 3) throw new IllegalArgumentException("Usage: " + HELP_EXPORT);
+    private static void handleExport(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        if (args.length < 3 || args.length > 4) throw new IllegalArgumentException("Usage: " + HELP_EXPORT);
+        final Path file = args.length == 4 ? Paths.get(args[3]) : shard.jsonFile();
+        if (args[1].equals("--since")) {
+            final long since = Long.parseLong(args[2]);
+            final long version = DataManager.exportDelta(shard.airport(), file, since);
+            out.println("Exported changes since " + since + " to " + file + " (version " + version + ")");
+            return;
+        }
         AirportSortOpts airportSort = AirportSortOpts.valueOf(args[1].toUpperCase());
         AirlineSortOpts airlineSort = AirlineSortOpts.valueOf(args[2].toUpperCase());
-        DataManager.exportData(airport, DATA_FILE, new ExportOpts(airportSort, airlineSort));
-        System.out.println("Exported with sorting: " + airportSort + ", " + airlineSort);
+        final long version = shard.airport().currentVersion();
+        if (args.length == 4 && isDirectory(args[3])) {
+            final int written = DataManager.exportPartitioned(shard.airport(), file,
+                    new ExportOpts(airportSort, airlineSort));
+            out.println("Exported to " + file + " with sorting: " + airportSort + ", " + airlineSort + " ("
+                    + written + " of " + shard.airport().getAirlines().size() + " airline files written, version "
+                    + version + ")");
+            return;
+        }
+        DataManager.exportData(shard.airport(), file, new ExportOpts(airportSort, airlineSort));
+        out.println("Exported to " + file + " with sorting: " + airportSort + ", " + airlineSort
+                + " (version " + version + ")");
+    }
+
+    private static void handleImport(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        if (args.length == 3 && args[1].equals("--patch")) {
+            // Applied to a copy, so a patch that fails halfway leaves the airport as it was; the
+            // result is saved like a full import, so the patched state needs no journal entries
+            final Airport patched = DataManager.applyPatch(shard.airport().copy(), Paths.get(args[2]));
+            shard.replace(patched);
+            out.println("Applied patch " + args[2] + " to " + patched.getName());
+            return;
+        }
+        if (args.length != 2) throw new IllegalArgumentException("Usage: " + HELP_IMPORT);
+        final Airport imported = isDirectory(args[1])
+                ? DataManager.importPartitioned(Paths.get(args[1])) : DataManager.importData(Paths.get(args[1]));
+        shard.replace(imported);
+        out.println("Imported " + imported.getName() + " from " + args[1]);
+    }
+
+    // A trailing separator asks for a partitioned export into a directory that may not exist yet
+    private static boolean isDirectory(final String path) {
+        return path.endsWith("/") || path.endsWith(File.separator) || Files.isDirectory(Paths.get(path));
+    }
+
+    private static void handleQuery(final Shard shard, final String[] args, final PrintStream out) {
+        final Airport airport = shard.airport();
+        if (args.length < 2) throw new IllegalArgumentException("Usage: " + HELP_QUERY);
+        final boolean list = args[1].equalsIgnoreCase("list");
+        final FleetQuery.Aggregate aggregate = list ? null : FleetQuery.Aggregate.of(args[1]);
+        int next = 2;
+        FleetQuery.Field field = null;
+        if (aggregate != null && aggregate != FleetQuery.Aggregate.COUNT) {
+            if (args.length < 3) throw new IllegalArgumentException("Usage: " + HELP_QUERY);
+            field = FleetQuery.Field.of(args[next++]);
+        }
+
+        final FleetQuery query = new FleetQuery();
+        FleetQuery.Group group = FleetQuery.Group.NONE;
+        if (!list && next + 1 < args.length && args[next].equalsIgnoreCase("by")) {
+            group = FleetQuery.Group.of(args[next + 1]);
+            query.groupBy(group);
+            next += 2;
+        }
+        if (next < args.length) {
+            if (!args[next].equalsIgnoreCase("where") || next + 1 == args.length) {
+                throw new IllegalArgumentException("Usage: " + HELP_QUERY);
+            }
+            for (int i = next + 1; i < args.length; i++) {
+                query.where(args[i]);
+            }
+        }
+
+        if (list) {
+            final List<FleetQuery.Match> matches = query.select(airport);
+            matches.forEach(match -> out.println("  " + match.airline() + ": " + match.airplane()));
+            out.println(matches.size() + " airplanes matched");
+            return;
+        }
+
+        final String label = group == FleetQuery.Group.NONE
+                ? aggregate.name().toLowerCase(Locale.ROOT) + (field != null ? " " + field.label() : "") : null;
+        for (final FleetQuery.Row row : query.aggregate(airport, aggregate, field)) {
+            final String name = label != null ? label : row.group();
+            if (aggregate == FleetQuery.Aggregate.COUNT) {
+                out.println(name + ": " + row.count());
+            } else {
+                final String value = Double.isNaN(row.value()) ? "n/a" : String.format("%.2f", row.value());
+                out.println(name + ": " + value + " (" + row.count() + " airplanes)");
+            }
+        }
+    }
+
+    private static void handleTop(final Shard shard, final String[] args, final PrintStream out) {
+        if (args.length < 3 || args.length > 4) throw new IllegalArgumentException("Usage: " + HELP_TOP);
+        final FleetQuery.Field field = FleetQuery.Field.of(args[1]);
+        final int k = Integer.parseInt(args[2]);
+        printRanked(shard.airport(), args.length == 4 ? args[3] : null, out,
+                airline -> airline.top(field, k), airport -> airport.top(field, k));
+    }
+
+    private static void handleRange(final Shard shard, final String[] args, final PrintStream out) {
+        if (args.length < 4 || args.length > 5) throw new IllegalArgumentException("Usage: " + HELP_RANGE);
+        final FleetQuery.Field field = FleetQuery.Field.of(args[1]);
+        final double min = Double.parseDouble(args[2]);
+        final double max = Double.parseDouble(args[3]);
+        printRanked(shard.airport(), args.length == 5 ? args[4] : null, out,
+                airline -> airline.range(field, min, max), airport -> airport.range(field, min, max));
+    }
+
+    private static void printRanked(final Airport airport, final String airlineName, final PrintStream out,
+                                    final Function<Airline, List<Airplane>> ofAirline,
+                                    final Function<Airport, List<FleetQuery.Match>> ofAirport) {
+        final int count;
+        if (airlineName != null) {
+            final List<Airplane> airplanes = ofAirline.apply(airport.findAirline(airlineName));
+            airplanes.forEach(airplane -> out.println("  " + airlineName + ": " + airplane));
+            count = airplanes.size();
+        } else {
+            final List<FleetQuery.Match> matches = ofAirport.apply(airport);
+            matches.forEach(match -> out.println("  " + match.airline() + ": " + match.airplane()));
+            count = matches.size();
+        }
+        out.println(count + " airplanes");
+    }
+
+    private static void handleBatch(final Shard shard, final String[] args, final PrintStream out) throws IOException {
+        if (args.length < 2 || args.length > 3) throw new IllegalArgumentException("Usage: " + HELP_BATCH);
+        final int checkpointEvery = args.length == 3 ? Integer.parseInt(args[2]) : 0;
+        if (checkpointEvery < 0) {
+            throw new IllegalArgumentException("Checkpoint interval cannot be negative");
+        }
+
+        final PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        int lineNumber = 0;
+        int executed = 0;
+        int failed = 0;
+        shard.journal().buffer();
+        try (BufferedReader reader = args[1].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[1]))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    String[] words = splitCommand(line);
+                    // Lines address the batch's airport unless they name another with @<airport>
+                    String key = shard.key();
+                    if (words[0].startsWith("@") && words.length > 1) {
+                        key = words[0].substring(1);
+                        words = Arrays.copyOfRange(words, 1, words.length);
+                    }
+                    final Command command = lookup(COMMAND_TABLE, words[0]);
+                    if (command == null) {
+                        throw new IllegalArgumentException("Unknown command: " + words[0]);
+                    }
+                    if (command == Command.BATCH) {
+                        throw new IllegalArgumentException("Nested batch is not supported");
+                    }
+                    final Shard lineShard = key.equals(shard.key()) ? shard : target(command, key);
+                    execute(command, lineShard, words, quiet);
+                    if (lineShard != shard) {
+                        lineShard.compactIfNeeded();
+                    }
+                    executed++;
+                } catch (final Exception e) {
+                    failed++;
+                    out.println("Line " + lineNumber + ": Error: " + e.getMessage());
+                }
+                if (checkpointEvery > 0 && (executed + failed) % checkpointEvery == 0) {
+                    shard.journal().flush();
+                    shard.compactIfNeeded();
+                }
+            }
+        } finally {
+            shard.journal().unbuffer();
+        }
+        out.println("Batch complete: " + executed + " succeeded, " + failed + " failed");
     }
 
-    private static void handleHelp(final String[] args) {
+    private static void handleAirports(final String[] args, final PrintStream out) throws IOException {
+        if (args.length == 2 && subcommand(args[1]) == Subcommand.LOAD) {
+            final long start = System.nanoTime();
+            final int loaded = REGISTRY.loadAll(Runtime.getRuntime().availableProcessors());
+            out.println(String.format("Loaded %d airports in %.1f ms", loaded, (System.nanoTime() - start) / 1e6));
+            return;
+        }
+        if (args.length != 1) throw new IllegalArgumentException("Usage: " + HELP_AIRPORTS);
+        for (final String key : REGISTRY.keys()) {
+            final Shard shard = REGISTRY.get(key);
+            if (shard.isLoaded()) {
+                final Airport airport = shard.airport();
+                out.println("  " + key + ": " + airport.getName() + " (" + airport.getAirlines().size()
+                        + " airlines, " + airport.getStatus() + ")");
+            } else {
+                out.println("  " + key + ": not loaded");
+            }
+        }
+    }
+
+    private static void handleStats(final String[] args, final PrintStream out) {
         if (args.length == 1) {
-            printHelp();
+            out.println(Metrics.report());
             return;
         }
-        switch (args[1].toLowerCase()) {
-            case "new" -> System.out.println(HELP_NEW);
-            case "update" -> System.out.println(HELP_UPDATE);
-            case "add" -> System.out.println(HELP_ADD);
-            case "remove" -> System.out.println(HELP_REMOVE);
-            case "info" -> System.out.println(HELP_INFO);
-            case "refuel" -> System.out.println(HELP_REFUEL);
-            case "fly" -> System.out.println(HELP_FLY);
-            case "list" -> System.out.println(HELP_LIST);
-            case "help" -> System.out.println("help\nhelp <command>");
-            default -> {
-                System.out.println("Unknown help topic: " + args[1]);
-                printHelp();
+        switch (args.length == 2 ? subcommand(args[1]) : Subcommand.UNKNOWN) {
+            case JSON -> out.println(Metrics.toJson());
+            case RESET -> {
+                Metrics.reset();
+                out.println("Metrics reset");
             }
+            default -> throw new IllegalArgumentException("Usage: " + HELP_STATS);
+        }
+    }
+
+    private static void handleHelp(final String[] args, final PrintStream out) {
+        if (args.length == 1) {
+            printHelp(out);
+            return;
+        }
+        final Command topic = lookup(COMMAND_TABLE, args[1]);
+        if (topic == null) {
+            out.println("Unknown help topic: " + args[1]);
+            printHelp(out);
+            return;
         }
+        out.println(topic.help);
     }
 }
\ No newline at end of file
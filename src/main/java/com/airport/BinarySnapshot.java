@@ -0,0 +1,365 @@
+package com.airport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary state file layout (all integers little-endian):
+//
+//   header             magic, version, stringCount, airlineCount
+//   airport            nameRef, maxAirlines, status
+//   string offsets     int[stringCount], offset of each entry from the start of the string blob
+//   string blob        per string: int byteLength + UTF-8 bytes
+//   manufacturer table manufacturerCount, then per manufacturer: nameRef, countryRef (since version 2)
+//   airline table      per airline: nameRef, maxAirplanes, airplaneCount, padding, long recordsOffset
+//   airplane records   fixed width, see RECORD_SIZE
+//
+// String refs index the interned string table; -1 stands for null. Version 1 files have no
+// manufacturer table and store the manufacturer name and country refs inline in each record.
+final class BinarySnapshot {
+    static final int MAGIC = 0x54525041; // "APRT"
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 16;
+    static final int AIRPORT_SIZE = 12;
+    static final int AIRLINE_ENTRY_SIZE = 24;
+
+    // idRef, modelRef, manufacturerRef, padding,
+    // fuelForKilometer, fuelCapacity, currentFuel, kilometersFlown
+    static final int RECORD_SIZE = 4 * 4 + 4 * 8;
+    static final int CURRENT_FUEL_OFFSET = 4 * 4 + 2 * 8;
+    static final int KILOMETERS_OFFSET = 4 * 4 + 3 * 8;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private BinarySnapshot() {
+    }
+
+    static void write(final Airport airport, final Path path) throws IOException {
+        final StringTable strings = new StringTable();
+        final Map<Manufacturer, Integer> manufacturers = new LinkedHashMap<>();
+        strings.intern(airport.getName());
+        // Each airline is captured once so counts, offsets and records agree while writers keep running
+        final List<Airline> airlines = airport.airlines();
+        final List<FleetSnapshot> fleets = new ArrayList<>(airlines.size());
+        int airplaneCount = 0;
+        for (final Airline airline : airlines) {
+            strings.intern(airline.getName());
+            final FleetSnapshot fleet = airline.snapshot();
+            fleets.add(fleet);
+            for (final Airplane airplane : fleet.airplanes()) {
+                strings.intern(airplane.getId());
+                strings.intern(airplane.getModel());
+                if (!manufacturers.containsKey(airplane.getManufacturer())) {
+                    strings.intern(airplane.getManufacturer().getName());
+                    strings.intern(airplane.getManufacturer().getCountry());
+                    manufacturers.put(airplane.getManufacturer(), manufacturers.size());
+                }
+                airplaneCount++;
+            }
+        }
+
+        final long airlineTableOffset = HEADER_SIZE + AIRPORT_SIZE + 4L * strings.size() + strings.blobSize()
+                + 4 + 8L * manufacturers.size();
+        final long recordsOffset = airlineTableOffset + (long) AIRLINE_ENTRY_SIZE * airlines.size();
+        if (recordsOffset + (long) RECORD_SIZE * airplaneCount > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot too large: " + airplaneCount + " airplanes");
+        }
+
+        // The live file may be memory-mapped by MappedFleetStore, so it is replaced rather than truncated
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Output out = new Output(channel)) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(strings.size());
+            out.putInt(airlines.size());
+
+            out.putInt(strings.ref(airport.getName()));
+            out.putInt(airport.getMaxAirlines());
+            out.putInt(airport.getStatus().ordinal());
+
+            int blobOffset = 0;
+            for (final byte[] bytes : strings.encoded) {
+                out.putInt(blobOffset);
+                blobOffset += 4 + bytes.length;
+            }
+            for (final byte[] bytes : strings.encoded) {
+                out.putInt(bytes.length);
+                out.put(bytes);
+            }
+
+            out.putInt(manufacturers.size());
+            for (final Manufacturer manufacturer : manufacturers.keySet()) {
+                out.putInt(strings.ref(manufacturer.getName()));
+                out.putInt(strings.ref(manufacturer.getCountry()));
+            }
+
+            long nextRecord = recordsOffset;
+            for (int i = 0; i < airlines.size(); i++) {
+                final Airline airline = airlines.get(i);
+                out.putInt(strings.ref(airline.getName()));
+                out.putInt(airline.getMaxAirplanes());
+                out.putInt(fleets.get(i).size());
+                out.putInt(0);
+                out.putLong(nextRecord);
+                nextRecord += (long) RECORD_SIZE * fleets.get(i).size();
+            }
+
+            for (final FleetSnapshot fleet : fleets) {
+                for (int i = 0; i < fleet.size(); i++) {
+                    final Airplane airplane = fleet.airplane(i);
+                    out.putInt(strings.ref(airplane.getId()));
+                    out.putInt(strings.ref(airplane.getModel()));
+                    out.putInt(manufacturers.get(airplane.getManufacturer()));
+                    out.putInt(0);
+                    out.putDouble(fleet.fuelForKilometer(i));
+                    out.putDouble(fleet.fuelCapacity(i));
+                    out.putDouble(fleet.currentFuel(i));
+                    out.putDouble(fleet.kilometersFlown(i));
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Airport read(final Path path) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large: " + size + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        final Layout layout = new Layout(buffer, path);
+        final Airport airport = new Airport(layout.airportName(), layout.maxAirlines());
+        for (int i = 0; i < layout.airlineCount(); i++) {
+            final Airline airline = new Airline(layout.airlineName(i), layout.maxAirplanes(i));
+            layout.readAirplanes(i, airline.fleet(), false);
+            airport.addAirline(airline);
+        }
+        airport.setStatus(layout.status());
+        return airport;
+    }
+
+    // Random-access view of a snapshot held in a (usually mapped) buffer
+    static final class Layout {
+        private final ByteBuffer buffer;
+        private final int version;
+        private final int stringCount;
+        private final int stringOffsets;
+        private final int stringBlob;
+        private final int manufacturerTable;
+        private final int airlineTable;
+        // Models repeat across a fleet, so each decoded model string is shared
+        private final Map<Integer, String> models = new HashMap<>();
+        private Manufacturer[] manufacturers;
+
+        Layout(final ByteBuffer buffer, final Path path) throws IOException {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE + AIRPORT_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an airport snapshot: " + path);
+            }
+            version = buffer.getInt(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            stringCount = buffer.getInt(8);
+            stringOffsets = HEADER_SIZE + AIRPORT_SIZE;
+            stringBlob = stringOffsets + 4 * stringCount;
+
+            int blobSize = 0;
+            if (stringCount > 0) {
+                final int last = buffer.getInt(stringBlob - 4);
+                blobSize = last + 4 + buffer.getInt(stringBlob + last);
+            }
+            if (version >= 2) {
+                manufacturerTable = stringBlob + blobSize;
+                airlineTable = manufacturerTable + 4 + 8 * buffer.getInt(manufacturerTable);
+            } else {
+                manufacturerTable = -1;
+                airlineTable = stringBlob + blobSize;
+            }
+        }
+
+        String airportName() {
+            return string(buffer.getInt(HEADER_SIZE));
+        }
+
+        int maxAirlines() {
+            return buffer.getInt(HEADER_SIZE + 4);
+        }
+
+        Airport.Status status() {
+            return Airport.Status.values()[buffer.getInt(HEADER_SIZE + 8)];
+        }
+
+        int airlineCount() {
+            return buffer.getInt(12);
+        }
+
+        String airlineName(final int airline) {
+            return string(buffer.getInt(airlineTable + airline * AIRLINE_ENTRY_SIZE));
+        }
+
+        int maxAirplanes(final int airline) {
+            return buffer.getInt(airlineTable + airline * AIRLINE_ENTRY_SIZE + 4);
+        }
+
+        int airplaneCount(final int airline) {
+            return buffer.getInt(airlineTable + airline * AIRLINE_ENTRY_SIZE + 8);
+        }
+
+        int recordsOffset(final int airline) {
+            return (int) buffer.getLong(airlineTable + airline * AIRLINE_ENTRY_SIZE + 16);
+        }
+
+        // Appends an airline's records to its fleet columns, optionally keeping their offsets for in-place writes.
+        // Synchronized because lazily loaded airlines share the model and manufacturer caches.
+        synchronized void readAirplanes(final int airline, final Fleet fleet, final boolean mapped) {
+            final int recordsOffset = recordsOffset(airline);
+            final int count = airplaneCount(airline);
+            for (int i = 0; i < count; i++) {
+                final int offset = recordsOffset + i * RECORD_SIZE;
+                fleet.append(
+                        new Airplane(string(buffer.getInt(offset)), model(buffer.getInt(offset + 4)), manufacturer(offset)),
+                        buffer.getDouble(offset + 16),
+                        buffer.getDouble(offset + 24),
+                        buffer.getDouble(offset + CURRENT_FUEL_OFFSET),
+                        buffer.getDouble(offset + KILOMETERS_OFFSET),
+                        mapped ? offset : Fleet.UNMAPPED);
+            }
+        }
+
+        private String model(final int ref) {
+            String model = models.get(ref);
+            if (model == null) {
+                model = string(ref);
+                models.put(ref, model);
+            }
+            return model;
+        }
+
+        private Manufacturer manufacturer(final int recordOffset) {
+            if (version < 2) {
+                return Manufacturer.of(
+                        string(buffer.getInt(recordOffset + 8)), string(buffer.getInt(recordOffset + 12)));
+            }
+            if (manufacturers == null) {
+                manufacturers = new Manufacturer[buffer.getInt(manufacturerTable)];
+            }
+            final int ref = buffer.getInt(recordOffset + 8);
+            if (manufacturers[ref] == null) {
+                final int entry = manufacturerTable + 4 + 8 * ref;
+                manufacturers[ref] = Manufacturer.of(string(buffer.getInt(entry)), string(buffer.getInt(entry + 4)));
+            }
+            return manufacturers[ref];
+        }
+
+        private String string(final int ref) {
+            if (ref < 0) {
+                return null;
+            }
+
+            final int offset = stringBlob + buffer.getInt(stringOffsets + 4 * ref);
+            final byte[] bytes = new byte[buffer.getInt(offset)];
+            buffer.get(offset + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class StringTable {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+        private long blobSize;
+
+        void intern(final String value) {
+            if (value != null && !refs.containsKey(value)) {
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                refs.put(value, encoded.size());
+                encoded.add(bytes);
+                blobSize += 4 + bytes.length;
+            }
+        }
+
+        int ref(final String value) {
+            return value == null ? -1 : refs.get(value);
+        }
+
+        int size() {
+            return encoded.size();
+        }
+
+        long blobSize() {
+            return blobSize;
+        }
+    }
+
+    // Buffered sequential writer over a FileChannel
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Output(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(final int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(final long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(final double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void put(final byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.airport;
+
+import java.nio.file.Path;
+
+// AUTO compresses when the file name ends in .gz
+enum Compression {
+    AUTO,
+    NONE,
+    GZIP;
+
+    boolean appliesTo(final Path file) {
+        return this == GZIP || (this == AUTO && file.getFileName().toString().endsWith(".gz"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.airport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-lived server keeping the airport resident behind a Unix domain socket. Each request is one
+// line holding the command arguments as a JSON array, so arguments arrive exactly as a local
+// invocation would see them; the response is the command output followed by END_OF_RESPONSE.
+final class Daemon {
+    static final String END_OF_RESPONSE = "\u0004";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    interface CommandExecutor {
+        void execute(String[] args, PrintStream out);
+    }
+
+    private Daemon() {
+    }
+
+    // Refuses to start while another daemon answers on the socket: both would keep their own model
+    // and write the same journal and snapshot. A socket file nobody answers on is left over from a
+    // daemon that died, and is replaced.
+    static void serve(final Path socket, final CommandExecutor executor) throws IOException {
+        if (isServing(socket)) {
+            throw new IOException("A daemon is already serving on " + socket);
+        }
+        Files.deleteIfExists(socket);
+        final ExecutorService clients = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "airport-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (final IOException ignored) {
+                    // The socket file is recreated on the next start anyway
+                }
+            }));
+            while (true) {
+                final SocketChannel client = server.accept();
+                clients.execute(() -> handle(client, executor));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static void handle(final SocketChannel client, final CommandExecutor executor) {
+        try (client;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(Channels.newOutputStream(client), false, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    executor.execute(MAPPER.readValue(line, String[].class), out);
+                } catch (final IOException e) {
+                    out.println("Error: Malformed request - " + e.getMessage());
+                }
+                out.println(END_OF_RESPONSE);
+                out.flush();
+            }
+        } catch (final IOException e) {
+            System.err.println("Warning: Client connection failed - " + e.getMessage());
+        }
+    }
+
+    static boolean isServing(final Path socket) throws IOException {
+        try (Connection running = connect(socket)) {
+            return running != null;
+        }
+    }
+
+    // Returns null when no daemon is listening on the socket
+    static Connection connect(final Path socket) {
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        try {
+            return new Connection(SocketChannel.open(UnixDomainSocketAddress.of(socket)));
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    static final class Connection implements Closeable {
+        private final SocketChannel channel;
+        private final BufferedReader in;
+        private final Writer out;
+
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+            this.in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            this.out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+        }
+
+        void send(final String[] args, final PrintStream response) throws IOException {
+            out.write(MAPPER.writeValueAsString(args));
+            out.write('\n');
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null && !line.equals(END_OF_RESPONSE)) {
+                response.println(line);
+            }
+            if (line == null) {
+                throw new IOException("Daemon closed the connection");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -1,119 +1,596 @@
 package com.airport;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Comparator;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class DataManager {
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    // Airport fields and the airline files, in airport order, of a partitioned export
+    static final String MANIFEST = "airport.json";
+    private static final int BUFFER_SIZE = 1 << 16;
 
+    // Compression streams too: the generator writes through the gzip stream, so neither side ever
+    // holds the whole document in memory
     public static void exportData(Airport airport, Path filePath, ExportOpts opts) throws IOException {
-        // Create a copy of the airport with its maxAirlines
-        Airport exportAirport = new Airport(airport.getName(), airport.getMaxAirlines());
-        exportAirport.setStatus(airport.getStatus()); // Preserve status
-
-        List<Airline> airlines = airport.getAirlines().stream()
-                .map(airline -> {
-                    // Create new airline with original maxAirplanes
-                    Airline newAirline = new Airline(airline.getName(), airline.getMaxAirplanes());
-                    // Add airplanes
-                    List<Airplane> sortedAirplanes = switch (opts.airlineSortOpts()) {
-                        case BY_NAME -> airline.getAirplanes().stream()
-                                .sorted(Comparator.comparing(Airplane::getModel))
-                                .toList();
-                        case BY_KM -> airline.getAirplanes().stream()
-                                .sorted(Comparator.comparingDouble(Airplane::getKilometersFlown))
-                                .toList();
-                        case BY_CAPACITY -> airline.getAirplanes().stream()
-                                .sorted(Comparator.comparingDouble(Airplane::getFuelCapacity))
-                                .toList();
-                        case BY_FUEL -> airline.getAirplanes().stream()
-                                .sorted(Comparator.comparingDouble(Airplane::getCurrentFuel))
-                                .toList();
-                        case NONE -> airline.getAirplanes();
-                    };
-                    sortedAirplanes.forEach(newAirline::addAirplane);//..(a->newAirline.addAirplane(a));
-                    return newAirline;
-                })
-                .toList();
-
-        if (opts.airportSortOpts() == AirportSortOpts.BY_NAME) {
-            airlines = airlines.stream()
-                    .sorted(Comparator.comparing(Airline::getName))
-                    .toList();
-        }
-
-        airlines.forEach(exportAirport::addAirline);
-
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath)) {
-            MAPPER.writeValue(writer, exportAirport);
+        long start = Metrics.start();
+        long size = writeAtomically(filePath, opts.compression().appliesTo(filePath),
+                generator -> writeAirport(generator, airport, opts));
+        if (Metrics.ENABLED) {
+            Metrics.count("bytes.export.json", size);
+            Metrics.stop("export.json", start);
         }
     }
 
+    // Field order mirrors what bean serialization of Airport/Airline/Airplane used to produce
+    private static void writeAirport(JsonGenerator generator, Airport airport, ExportOpts opts) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", airport.getName());
+        generator.writeArrayFieldStart("airlines");
+        for (Airline airline : sortAirlines(airport, opts.airportSortOpts())) {
+            writeAirline(generator, airline, opts.airlineSortOpts());
+        }
+        generator.writeEndArray();
+        generator.writeStringField("status", airport.getStatus().name());
+        generator.writeNumberField("maxAirlines", airport.getMaxAirlines());
+        generator.writeEndObject();
+    }
+
+    private static void writeAirline(JsonGenerator generator, Airline airline, AirlineSortOpts sort) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", airline.getName());
+        generator.writeArrayFieldStart("airplanes");
+        FleetSnapshot fleet = airline.snapshot(sort);
+        for (int i = 0; i < fleet.size(); i++) {
+            writeAirplane(generator, fleet, i);
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("maxAirplanes", airline.getMaxAirplanes());
+        generator.writeBooleanField("operational", fleet.size() > 0);
+        generator.writeEndObject();
+    }
+
+    private static void writeAirplane(JsonGenerator generator, FleetSnapshot fleet, int index) throws IOException {
+        Airplane airplane = fleet.airplane(index);
+        generator.writeStartObject();
+        generator.writeStringField("id", airplane.getId());
+        generator.writeStringField("model", airplane.getModel());
+        generator.writeObjectFieldStart("manufacturer");
+        generator.writeStringField("name", airplane.getManufacturer().getName());
+        generator.writeStringField("country", airplane.getManufacturer().getCountry());
+        generator.writeEndObject();
+        generator.writeNumberField("fuelForKilometer", fleet.fuelForKilometer(index));
+        generator.writeNumberField("fuelCapacity", fleet.fuelCapacity(index));
+        generator.writeNumberField("currentFuel", fleet.currentFuel(index));
+        generator.writeNumberField("kilometersFlown", fleet.kilometersFlown(index));
+        generator.writeEndObject();
+    }
+
+    // Writes what changed after the given version as a patch, or the whole airport when the changes
+    // reach back before the model's baseline. Returns the version to pass as since next time.
+    //
+    // A patch lists the removals first, then the airport's name and status if they changed, then
+    // every airline that joined (all its airplanes) and every other airline with changed airplanes.
+    public static long exportDelta(Airport airport, Path filePath, long since) throws IOException {
+        long start = Metrics.start();
+        // Read first: a change racing with the export lands in this patch, the next one, or both
+        long version = airport.currentVersion();
+        long size = writeAtomically(filePath, Compression.AUTO.appliesTo(filePath), generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("since", since);
+            generator.writeNumberField("version", version);
+            boolean full = since < airport.baseline();
+            generator.writeBooleanField("full", full);
+            if (full) {
+                generator.writeFieldName("airport");
+                writeAirport(generator, airport, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+            } else {
+                writeChanges(generator, airport, since);
+            }
+            generator.writeEndObject();
+        });
+        if (Metrics.ENABLED) {
+            Metrics.count("bytes.export.delta", size);
+            Metrics.stop("export.delta", start);
+        }
+        return version;
+    }
+
+    private static void writeChanges(JsonGenerator generator, Airport airport, long since) throws IOException {
+        generator.writeArrayFieldStart("removed");
+        for (Airport.Tombstone tombstone : airport.removedSince(since)) {
+            generator.writeStartObject();
+            generator.writeStringField("airline", tombstone.airline());
+            if (tombstone.airplane() != null) {
+                generator.writeStringField("airplane", tombstone.airplane());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        if (airport.version() > since) {
+            generator.writeStringField("name", airport.getName());
+            generator.writeStringField("status", airport.getStatus().name());
+        }
+        generator.writeArrayFieldStart("airlines");
+        for (Airline airline : airport.airlines()) {
+            boolean added = airline.version() > since;
+            FleetSnapshot fleet = added ? airline.snapshot() : airline.changedSince(since);
+            if (!added && fleet.size() == 0) {
+                continue;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("name", airline.getName());
+            generator.writeBooleanField("added", added);
+            generator.writeNumberField("maxAirplanes", airline.getMaxAirplanes());
+            generator.writeArrayFieldStart("airplanes");
+            for (int i = 0; i < fleet.size(); i++) {
+                writeAirplane(generator, fleet, i);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    // Applies a patch written by exportDelta and returns the resulting airport: the given one,
+    // changed in place, or a new one if the patch carries a full export
+    public static Airport applyPatch(Airport airport, Path filePath) throws IOException {
+        long start = Metrics.start();
+        JsonNode patch;
+        try (BufferedReader reader = newReader(filePath)) {
+            patch = MAPPER.readTree(reader);
+        }
+        if (patch == null || !patch.isObject() || !patch.has("version")) {
+            throw new IOException("Not a patch: " + filePath);
+        }
+        Airport result;
+        if (patch.path("full").asBoolean()) {
+            try (JsonParser parser = MAPPER.treeAsTokens(patch.path("airport"))) {
+                parser.nextToken();
+                expect(parser, JsonToken.START_OBJECT);
+                result = readAirport(parser);
+            }
+        } else {
+            applyChanges(airport, patch);
+            result = airport;
+        }
+        Metrics.stop("import.patch", start);
+        return result;
+    }
+
+    private static void applyChanges(Airport airport, JsonNode patch) throws IOException {
+        // A closed airport rejects structural changes, so the status is applied last
+        Airport.Status status = patch.has("status")
+                ? Airport.Status.valueOf(patch.get("status").asText()) : airport.getStatus();
+        airport.setStatus(Airport.Status.OPEN);
+        try {
+            for (JsonNode removed : patch.path("removed")) {
+                String name = removed.path("airline").asText();
+                if (removed.has("airplane")) {
+                    findAirline(airport, name).ifPresent(a -> a.removeAirplane(removed.get("airplane").asText()));
+                } else {
+                    airport.removeAirline(name);
+                }
+            }
+            if (patch.has("name")) {
+                airport.updateName(patch.get("name").asText());
+            }
+            for (JsonNode changed : patch.path("airlines")) {
+                String name = changed.path("name").asText();
+                if (changed.path("added").asBoolean()) {
+                    airport.removeAirline(name);
+                    airport.addAirline(new Airline(name, changed.path("maxAirplanes").asInt()));
+                }
+                Airline airline = airport.findAirline(name);
+                for (JsonNode node : changed.path("airplanes")) {
+                    Airplane airplane;
+                    try (JsonParser parser = MAPPER.treeAsTokens(node)) {
+                        parser.nextToken();
+                        airplane = readAirplane(parser);
+                    }
+                    upsertAirplane(airline, airplane);
+                }
+            }
+        } finally {
+            airport.setStatus(status);
+        }
+    }
+
+    private static Optional<Airline> findAirline(Airport airport, String name) {
+        try {
+            return Optional.of(airport.findAirline(name));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    // State changes keep the airplane in place; a changed model or fuel profile replaces it
+    private static void upsertAirplane(Airline airline, Airplane airplane) {
+        Airplane existing;
+        try {
+            existing = airline.findAirplane(airplane.getId());
+        } catch (IllegalArgumentException e) {
+            airline.addAirplane(airplane);
+            return;
+        }
+        if (Objects.equals(existing.getModel(), airplane.getModel())
+                && existing.getManufacturer().equals(airplane.getManufacturer())
+                && existing.getFuelForKilometer() == airplane.getFuelForKilometer()
+                && existing.getFuelCapacity() == airplane.getFuelCapacity()) {
+            existing.restoreState(airplane.getCurrentFuel(), airplane.getKilometersFlown());
+        } else {
+            airline.removeAirplane(airplane.getId());
+            airline.addAirplane(airplane);
+        }
+    }
+
+    // Writes a directory with a manifest and one file per airline, the airlines written in parallel on
+    // the common fork-join pool. Exporting again into the same directory rewrites only the airlines
+    // changed since the manifest's version, as long as the manifest was written from this very model
+    // (its id, not just a version in range, since clocks of different models overlap), the version
+    // is past the baseline and the airline order and compression are the same; files of airlines that
+    // are gone are deleted. Compression applies to every file, manifest included, under their .json
+    // names; import tells compressed files by content. Returns the number of airline files written.
+    public static int exportPartitioned(Airport airport, Path directory, ExportOpts opts) throws IOException {
+        long start = Metrics.start();
+        long version = airport.currentVersion();
+        Files.createDirectories(directory);
+        Path manifestFile = directory.resolve(MANIFEST);
+        boolean gzip = opts.compression().appliesTo(manifestFile);
+        JsonNode previous = Files.exists(manifestFile) ? readTree(manifestFile) : MAPPER.createObjectNode();
+        long previousVersion = previous.path("version").asLong(-1);
+        boolean incremental = airport.modelId().equals(previous.path("modelId").asText())
+                && previousVersion >= airport.baseline() && previousVersion <= version
+                && opts.airlineSortOpts().name().equals(previous.path("airlineSort").asText())
+                && gzip == previous.path("compressed").asBoolean(false);
+
+        // Airlines keep their file from the previous export; new ones get a free name derived from theirs
+        Map<String, String> previousFiles = new HashMap<>();
+        for (JsonNode entry : previous.path("airlines")) {
+            previousFiles.put(entry.path("name").asText(), entry.path("file").asText());
+        }
+        List<Airline> airlines = new ArrayList<>(sortAirlines(airport, opts.airportSortOpts()));
+        Map<Airline, String> files = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>();
+        for (Airline airline : airlines) {
+            String file = previousFiles.get(airline.getName());
+            if (file != null && used.add(file)) {
+                files.put(airline, file);
+            }
+        }
+        for (Airline airline : airlines) {
+            if (!files.containsKey(airline)) {
+                files.put(airline, fileName(airline.getName(), used));
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Airline airline : airlines) {
+            Path file = directory.resolve(files.get(airline));
+            boolean reused = files.get(airline).equals(previousFiles.get(airline.getName()));
+            if (!incremental || !reused || airline.latestVersion() > previousVersion || !Files.exists(file)) {
+                tasks.add(() -> {
+                    Metrics.count("bytes.export.json", writeAtomically(file, gzip,
+                            generator -> writeAirline(generator, airline, opts.airlineSortOpts())));
+                    return null;
+                });
+            }
+        }
+        invokeAll(tasks);
+
+        // The manifest goes last, so it never names an airline file that was not written yet
+        Metrics.count("bytes.export.json", writeAtomically(manifestFile, gzip, generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("name", airport.getName());
+            generator.writeStringField("status", airport.getStatus().name());
+            generator.writeNumberField("maxAirlines", airport.getMaxAirlines());
+            generator.writeStringField("modelId", airport.modelId());
+            generator.writeNumberField("version", version);
+            generator.writeStringField("airlineSort", opts.airlineSortOpts().name());
+            generator.writeBooleanField("compressed", gzip);
+            generator.writeArrayFieldStart("airlines");
+            for (Airline airline : airlines) {
+                generator.writeStartObject();
+                generator.writeStringField("name", airline.getName());
+                generator.writeStringField("file", files.get(airline));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
+        for (String stale : previousFiles.values()) {
+            if (!used.contains(stale)) {
+                Files.deleteIfExists(directory.resolve(stale));
+            }
+        }
+        Metrics.count("export.partitioned.files", tasks.size());
+        Metrics.stop("export.partitioned", start);
+        return tasks.size();
+    }
+
+    // Letters, digits, '.', '_' and '-' are kept, anything else becomes '_'; clashes get a counter
+    private static String fileName(String airline, Set<String> used) {
+        String base = airline.replaceAll("[^A-Za-z0-9._-]", "_");
+        String name = base + ".json";
+        for (int i = 2; name.equals(MANIFEST) || !used.add(name); i++) {
+            name = base + "-" + i + ".json";
+        }
+        return name;
+    }
+
+    public static Airport importPartitioned(Path directory) throws IOException {
+        long start = Metrics.start();
+        JsonNode manifest = readTree(directory.resolve(MANIFEST));
+        List<Callable<Airline>> tasks = new ArrayList<>();
+        for (JsonNode entry : manifest.path("airlines")) {
+            Path file = directory.resolve(entry.path("file").asText());
+            tasks.add(() -> {
+                try (BufferedReader reader = newReader(file);
+                     JsonParser parser = MAPPER.getFactory().createParser(reader)) {
+                    parser.nextToken();
+                    expect(parser, JsonToken.START_OBJECT);
+                    return readAirline(parser);
+                }
+            });
+        }
+        List<Airline> airlines = invokeAll(tasks);
+        Airport airport = new Airport(manifest.path("name").asText(), manifest.path("maxAirlines").asInt());
+        airlines.forEach(airport::addAirline);
+        airport.setStatus(Airport.Status.valueOf(manifest.path("status").asText(Airport.Status.OPEN.name())));
+        Metrics.stop("import.partitioned", start);
+        return airport;
+    }
+
+    private static JsonNode readTree(Path file) throws IOException {
+        try (BufferedReader reader = newReader(file)) {
+            JsonNode node = MAPPER.readTree(reader);
+            if (node == null || !node.isObject()) {
+                throw new IOException("Expected a JSON object in " + file);
+            }
+            return node;
+        }
+    }
+
+    private interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    // Written to a temp file next to the target and renamed over it, so a crash never leaves a torn
+    // file. Every write gets its own temp file: exports to the same target may run concurrently, and
+    // the last rename wins. Returns the size of the written file.
+    private static long writeAtomically(Path file, boolean gzip, JsonWriter content) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = newWriter(temp, gzip);
+                 JsonGenerator generator = MAPPER.getFactory().createGenerator(writer)) {
+                content.write(generator);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return Files.size(file);
+    }
+
+    // Runs the tasks on the common fork-join pool; results come back in task order
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static BufferedWriter newWriter(Path file, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // Gzip is recognized by its magic bytes rather than the name, so every import takes either form
+    private static BufferedReader newReader(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static Collection<Airline> sortAirlines(Airport airport, AirportSortOpts sort) {
+        return sort == AirportSortOpts.NONE ? airport.airlines() : airport.airlinesSortedByName();
+    }
+
+    public static void exportSnapshot(Airport airport, Path filePath) throws IOException {
+        long start = Metrics.start();
+        BinarySnapshot.write(airport, filePath);
+        if (Metrics.ENABLED) {
+            Metrics.count("bytes.export.snapshot", Files.size(filePath));
+            Metrics.stop("export.snapshot", start);
+        }
+    }
+
+    public static Airport importSnapshot(Path filePath) throws IOException {
+        long start = Metrics.start();
+        Airport airport = BinarySnapshot.read(filePath);
+        Metrics.stop("import.snapshot", start);
+        return airport;
+    }
+
     public static Airport importData(Path filePath) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            AirportData imported = MAPPER.readValue(reader, AirportData.class);
-            if (imported == null) {
+        long start = Metrics.start();
+        Airport airport = readData(filePath);
+        Metrics.stop("import.json", start);
+        return airport;
+    }
+
+    private static Airport readData(Path filePath) throws IOException {
+        try (BufferedReader reader = newReader(filePath);
+             JsonParser parser = MAPPER.getFactory().createParser(reader)) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
                 return new Airport("Default Airport", 10);
             }
-            Airport airport = new Airport(imported.name, imported.maxAirlines);
-            airport.setStatus(imported.status != null ? Airport.Status.valueOf(imported.status) : Airport.Status.OPEN);
-            if (imported.airlines != null) {
-                for (AirlineData airlineData : imported.airlines) {
-                    Airline airline = new Airline(airlineData.name, airlineData.maxAirplanes);
-                    if (airlineData.airplanes != null) {
-                        for (AirplaneData planeData : airlineData.airplanes) {
-                            Manufacturer manufacturer = new Manufacturer(planeData.manufacturer.name, planeData.manufacturer.country);
-                            Airplane airplane = new Airplane(
-                                    planeData.id,
-                                    planeData.model,
-                                    manufacturer,
-                                    planeData.fuelForKilometer,
-                                    planeData.fuelCapacity,
-                                    planeData.currentFuel,
-                                    planeData.kilometersFlown);
-                            airline.addAirplane(airplane);
+            expect(parser, JsonToken.START_OBJECT);
+            return readAirport(parser);
+        }
+    }
+
+    // Airlines are emitted before maxAirlines/status, so finished airlines are held until the
+    // airport can be constructed; only the airline currently being parsed is partially built.
+    private static Airport readAirport(JsonParser parser) throws IOException {
+        String name = null;
+        int maxAirlines = 0;
+        String status = null;
+        List<Airline> airlines = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString();
+                case "maxAirlines" -> maxAirlines = parser.getValueAsInt();
+                case "status" -> status = parser.getValueAsString();
+                case "airlines" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            airlines.add(readAirline(parser));
                         }
                     }
-                    airport.addAirline(airline);
                 }
+                default -> parser.skipChildren();
             }
-            return airport;
         }
+        Airport airport = new Airport(name, maxAirlines);
+        airlines.forEach(airport::addAirline);
+        airport.setStatus(status != null ? Airport.Status.valueOf(status) : Airport.Status.OPEN);
+        return airport;
     }
 
-    private static class AirportData {
-        public String name;
-        public int maxAirlines;
-        public String status;
-        public List<AirlineData> airlines;
+    private static Airline readAirline(JsonParser parser) throws IOException {
+        String name = null;
+        int maxAirplanes = 0;
+        List<Airplane> airplanes = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString();
+                case "maxAirplanes" -> maxAirplanes = parser.getValueAsInt();
+                case "airplanes" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            airplanes.add(readAirplane(parser));
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        Airline airline = new Airline(name, maxAirplanes);
+        airplanes.forEach(airline::addAirplane);
+        return airline;
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class AirlineData {
-        public String name;
-        public int maxAirplanes;
-        public List<AirplaneData> airplanes;
+    private static Airplane readAirplane(JsonParser parser) throws IOException {
+        String id = null;
+        String model = null;
+        Manufacturer manufacturer = null;
+        double fuelForKilometer = 0;
+        double fuelCapacity = 0;
+        double currentFuel = 0;
+        double kilometersFlown = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "model" -> model = parser.getValueAsString();
+                case "manufacturer" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        manufacturer = readManufacturer(parser);
+                    }
+                }
+                case "fuelForKilometer" -> fuelForKilometer = parser.getValueAsDouble();
+                case "fuelCapacity" -> fuelCapacity = parser.getValueAsDouble();
+                case "currentFuel" -> currentFuel = parser.getValueAsDouble();
+                case "kilometersFlown" -> kilometersFlown = parser.getValueAsDouble();
+                default -> parser.skipChildren();
+            }
+        }
+        if (manufacturer == null) {
+            throw new IOException("Airplane " + id + " has no manufacturer");
+        }
+        return new Airplane(id, model, manufacturer, fuelForKilometer, fuelCapacity, currentFuel, kilometersFlown);
     }
 
-    private static class AirplaneData {
-        public String id;
-        public String model;
-        public ManufacturerData manufacturer;
-        public double fuelForKilometer;
-        public double fuelCapacity;
-        public double currentFuel;
-        public double kilometersFlown;
+    private static Manufacturer readManufacturer(JsonParser parser) throws IOException {
+        String name = null;
+        String country = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString();
+                case "country" -> country = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return Manufacturer.of(name, country);
     }
 
-    private static class ManufacturerData {
-        public String name;
-        public String country;
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.currentToken() != expected) {
+            throw new IOException("Expected " + expected + " but found " + parser.currentToken()
+                    + " at " + parser.getCurrentLocation());
+        }
     }
 }
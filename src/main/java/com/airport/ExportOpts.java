@@ -15,4 +15,9 @@ enum AirportSortOpts {
 
 public record ExportOpts(
         AirportSortOpts airportSortOpts,
-        AirlineSortOpts airlineSortOpts) { }
+        AirlineSortOpts airlineSortOpts,
+        Compression compression) {
+    public ExportOpts(final AirportSortOpts airportSortOpts, final AirlineSortOpts airlineSortOpts) {
+        this(airportSortOpts, airlineSortOpts, Compression.AUTO);
+    }
+}
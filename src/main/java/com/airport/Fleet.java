@@ -0,0 +1,560 @@
+package com.airport;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+// Columnar storage for a fleet: one primitive array per numeric Airplane field, indexed by slot.
+// Airplane instances are views holding (fleet, slot); slots stay in insertion order so the
+// unsorted export order is preserved, and removal shifts later slots down by one.
+//
+// Every fleet has its own StampedLock, so airlines are independent lock stripes. Mutations take
+// the write lock; reads are optimistic and only fall back to the read lock when a writer
+// interfered. Columns never shrink, so an optimistic read of a stale slot stays in bounds.
+//
+// Sorted reads build a SortIndex per order on first use; from then on put, remove and setState
+// keep it current, so later sorted snapshots walk the index instead of sorting the fleet again.
+//
+// Once the airline belongs to an airport, adds and state changes stamp the slot with a version
+// from the airport's clock. Airplanes appended while loading a snapshot keep version 0, as they
+// predate everything the clock has handed out.
+final class Fleet {
+    private static final int INITIAL_CAPACITY = 8;
+    static final int UNMAPPED = -1;
+
+    static final int FUEL_FOR_KILOMETER = 0;
+    static final int FUEL_CAPACITY = 1;
+    static final int CURRENT_FUEL = 2;
+    static final int KILOMETERS_FLOWN = 3;
+
+    // State change of one airplane, applied under the fleet's write lock
+    interface Update {
+        void apply(Fleet fleet, int slot);
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private Airplane[] airplanes;
+    private double[] fuelForKilometer;
+    private double[] fuelCapacity;
+    private double[] currentFuel;
+    private double[] kilometersFlown;
+    private int[] recordOffsets;
+    // Insertion sequence per slot, the tie-breaker that keeps indexed orders stable
+    private long[] sequences;
+    private long nextSequence;
+    // Version of the last add or state change per slot, see changedSince
+    private long[] versions;
+    // Latest add, removal or state change, so callers can skip unchanged fleets without a scan
+    private volatile long latestVersion;
+    private volatile VersionClock clock;
+    private final SortIndex[] indexes = new SortIndex[AirlineSortOpts.values().length];
+    private final Map<String, Airplane> airplanesById = new ConcurrentHashMap<>();
+    // The airplanes in slot order as a persistent vector; changes only on add and remove, so
+    // readers that need the members but not their state take it without copying or locking
+    private volatile PersistentVector<Airplane> members = PersistentVector.empty();
+    private volatile int size;
+    private boolean standalone;
+    private volatile MappedFleetStore store;
+
+    Fleet(final int capacity) {
+        airplanes = new Airplane[capacity];
+        fuelForKilometer = new double[capacity];
+        fuelCapacity = new double[capacity];
+        currentFuel = new double[capacity];
+        kilometersFlown = new double[capacity];
+        recordOffsets = new int[capacity];
+        sequences = new long[capacity];
+        versions = new long[capacity];
+    }
+
+    Fleet() {
+        this(INITIAL_CAPACITY);
+    }
+
+    // Storage for an airplane that does not belong to an airline
+    static Fleet single(final Airplane airplane, final double fuelForKilometer, final double fuelCapacity,
+                        final double currentFuel, final double kilometersFlown) {
+        final Fleet fleet = new Fleet(1);
+        fleet.standalone = true;
+        fleet.put(airplane, fuelForKilometer, fuelCapacity, currentFuel, kilometersFlown, UNMAPPED, 0);
+        return fleet;
+    }
+
+    boolean isStandalone() {
+        return standalone;
+    }
+
+    void attachStore(final MappedFleetStore store) {
+        this.store = store;
+    }
+
+    void setClock(final VersionClock clock) {
+        this.clock = clock;
+    }
+
+    private long stamp() {
+        final VersionClock current = clock;
+        if (current == null) {
+            return 0;
+        }
+        final long version = current.next();
+        latestVersion = version;
+        return version;
+    }
+
+    long latestVersion() {
+        return latestVersion;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Immutable list of the airplanes as of the last add or remove
+    List<Airplane> members() {
+        return members;
+    }
+
+    Airplane get(final String id) {
+        return airplanesById.get(id);
+    }
+
+    // Moves a standalone airplane into this fleet; capacity and id checks happen under the lock
+    // so concurrent adds cannot overfill the fleet or register an id twice
+    void add(final Airplane airplane, final int maxAirplanes) {
+        // Only standalone sources are locked: they are never locked second, so no cycle can form
+        final Fleet source = airplane.fleet();
+        final boolean detached = source.isStandalone();
+        final long sourceStamp = detached ? source.lock.writeLock() : 0;
+        try {
+            final long stamp = lock.writeLock();
+            try {
+                if (size >= maxAirplanes) {
+                    throw new IllegalStateException("Airline at capacity: " + maxAirplanes);
+                }
+                if (airplanesById.containsKey(airplane.getId())) {
+                    throw new IllegalArgumentException("Airplane already exists: " + airplane.getId());
+                }
+                if (!detached || airplane.fleet() != source) {
+                    throw new IllegalStateException("Airplane already belongs to an airline: " + airplane.getId());
+                }
+
+                put(airplane, source.fuelForKilometer[0], source.fuelCapacity[0], source.currentFuel[0],
+                        source.kilometersFlown[0], UNMAPPED, stamp());
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } finally {
+            if (detached) {
+                source.lock.unlockWrite(sourceStamp);
+            }
+        }
+    }
+
+    void append(final Airplane airplane, final double fuelForKilometer, final double fuelCapacity,
+                final double currentFuel, final double kilometersFlown, final int recordOffset) {
+        final long stamp = lock.writeLock();
+        try {
+            put(airplane, fuelForKilometer, fuelCapacity, currentFuel, kilometersFlown, recordOffset, 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void put(final Airplane airplane, final double fuelForKilometer, final double fuelCapacity,
+                     final double currentFuel, final double kilometersFlown, final int recordOffset,
+                     final long version) {
+        final int slot = size;
+        if (slot == airplanes.length) {
+            grow();
+        }
+
+        airplanes[slot] = airplane;
+        this.fuelForKilometer[slot] = fuelForKilometer;
+        this.fuelCapacity[slot] = fuelCapacity;
+        this.currentFuel[slot] = currentFuel;
+        this.kilometersFlown[slot] = kilometersFlown;
+        recordOffsets[slot] = recordOffset;
+        sequences[slot] = nextSequence++;
+        versions[slot] = version;
+        for (final SortIndex index : indexes) {
+            if (index != null) {
+                index.add(airplane, key(index, slot), sequences[slot]);
+            }
+        }
+        airplanesById.put(airplane.getId(), airplane);
+        members = members.append(airplane);
+        airplane.bind(this, slot);
+        size = slot + 1;
+    }
+
+    Airplane remove(final String id) {
+        final long stamp = lock.writeLock();
+        try {
+            final Airplane removed = airplanesById.remove(id);
+            if (removed == null) {
+                return null;
+            }
+
+            final int slot = removed.slot();
+            stamp();
+            for (final SortIndex index : indexes) {
+                if (index != null) {
+                    index.remove(removed, key(index, slot), sequences[slot]);
+                }
+            }
+            final Fleet detached = single(removed, fuelForKilometer[slot], fuelCapacity[slot], currentFuel[slot],
+                    kilometersFlown[slot]);
+            final int last = size - 1;
+            final int tail = last - slot;
+            System.arraycopy(airplanes, slot + 1, airplanes, slot, tail);
+            System.arraycopy(fuelForKilometer, slot + 1, fuelForKilometer, slot, tail);
+            System.arraycopy(fuelCapacity, slot + 1, fuelCapacity, slot, tail);
+            System.arraycopy(currentFuel, slot + 1, currentFuel, slot, tail);
+            System.arraycopy(kilometersFlown, slot + 1, kilometersFlown, slot, tail);
+            System.arraycopy(recordOffsets, slot + 1, recordOffsets, slot, tail);
+            System.arraycopy(sequences, slot + 1, sequences, slot, tail);
+            System.arraycopy(versions, slot + 1, versions, slot, tail);
+            airplanes[last] = null;
+            members = members.without(slot);
+            size = last;
+            for (int i = slot; i < last; i++) {
+                airplanes[i].bind(this, i);
+            }
+            removed.bind(detached, 0);
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void grow() {
+        final int capacity = Math.max(INITIAL_CAPACITY, airplanes.length * 2);
+        airplanes = Arrays.copyOf(airplanes, capacity);
+        fuelForKilometer = Arrays.copyOf(fuelForKilometer, capacity);
+        fuelCapacity = Arrays.copyOf(fuelCapacity, capacity);
+        currentFuel = Arrays.copyOf(currentFuel, capacity);
+        kilometersFlown = Arrays.copyOf(kilometersFlown, capacity);
+        recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+    }
+
+    // Applies the update while the airplane is bound to this fleet; false if it moved elsewhere
+    boolean update(final Airplane airplane, final Update update) {
+        final long stamp = lock.writeLock();
+        try {
+            if (airplane.fleet() != this) {
+                return false;
+            }
+            update.apply(this, airplane.slot());
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    boolean validate(final long stamp) {
+        return stamp != 0 && lock.validate(stamp);
+    }
+
+    long readLock() {
+        return lock.readLock();
+    }
+
+    void unlockRead(final long stamp) {
+        lock.unlockRead(stamp);
+    }
+
+    // Raw column access; callers hold the lock or validate an optimistic stamp afterwards
+    double value(final int column, final int slot) {
+        return switch (column) {
+            case FUEL_FOR_KILOMETER -> fuelForKilometer[slot];
+            case FUEL_CAPACITY -> fuelCapacity[slot];
+            case CURRENT_FUEL -> currentFuel[slot];
+            case KILOMETERS_FLOWN -> kilometersFlown[slot];
+            default -> throw new IllegalArgumentException("Unknown column: " + column);
+        };
+    }
+
+    // Only called from an Update, i.e. under the write lock
+    void setState(final int slot, final double currentFuel, final double kilometersFlown) {
+        final SortIndex byFuel = indexes[AirlineSortOpts.BY_FUEL.ordinal()];
+        if (byFuel != null) {
+            byFuel.move(airplanes[slot], this.currentFuel[slot], currentFuel, sequences[slot]);
+        }
+        final SortIndex byKilometers = indexes[AirlineSortOpts.BY_KM.ordinal()];
+        if (byKilometers != null) {
+            byKilometers.move(airplanes[slot], this.kilometersFlown[slot], kilometersFlown, sequences[slot]);
+        }
+        this.currentFuel[slot] = currentFuel;
+        this.kilometersFlown[slot] = kilometersFlown;
+        versions[slot] = stamp();
+        if (isMapped(slot)) {
+            store.writeState(recordOffsets[slot], currentFuel, kilometersFlown);
+        }
+    }
+
+    boolean isMapped(final int slot) {
+        final MappedFleetStore mapped = store;
+        return recordOffsets[slot] != UNMAPPED && mapped != null && mapped.isOpen();
+    }
+
+    boolean isMapped(final Airplane airplane) {
+        final long stamp = lock.readLock();
+        try {
+            return airplane.fleet() == this && isMapped(airplane.slot());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    double sumKilometersFlown() {
+        return sum(KILOMETERS_FLOWN);
+    }
+
+    double sumCurrentFuel() {
+        return sum(CURRENT_FUEL);
+    }
+
+    double sumFuelCapacity() {
+        return sum(FUEL_CAPACITY);
+    }
+
+    private double sum(final int column) {
+        final long stamp = lock.tryOptimisticRead();
+        final double total = sumUnlocked(column);
+        if (validate(stamp)) {
+            return total;
+        }
+
+        final long readStamp = lock.readLock();
+        try {
+            return sumUnlocked(column);
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    private double sumUnlocked(final int column) {
+        final double[] values = switch (column) {
+            case FUEL_CAPACITY -> fuelCapacity;
+            case CURRENT_FUEL -> currentFuel;
+            default -> kilometersFlown;
+        };
+        final int count = Math.min(size, values.length);
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    // Point-in-time copy of the whole fleet, taken without blocking writers unless one interferes
+    FleetSnapshot snapshot() {
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            final FleetSnapshot snapshot = copy();
+            if (lock.validate(stamp)) {
+                return snapshot;
+            }
+        }
+
+        final long readStamp = lock.readLock();
+        try {
+            return copy();
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    // Same as snapshot().sortedBy(sort), but a linear walk of the maintained index for that order
+    FleetSnapshot snapshot(final AirlineSortOpts sort) {
+        if (sort == AirlineSortOpts.NONE) {
+            return snapshot();
+        }
+
+        // Index walks are not safe under an optimistic read, so this always takes a lock
+        final long readStamp = lock.readLock();
+        try {
+            final SortIndex index = indexes[sort.ordinal()];
+            if (index != null) {
+                return copy(index);
+            }
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+
+        final long stamp = lock.writeLock();
+        try {
+            SortIndex index = indexes[sort.ordinal()];
+            if (index == null) {
+                index = new SortIndex(sort);
+                for (int slot = 0; slot < size; slot++) {
+                    index.add(airplanes[slot], key(index, slot), sequences[slot]);
+                }
+                indexes[sort.ordinal()] = index;
+            }
+            return copy(index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The k airplanes with the highest values of the sort's column, highest first, with equal values
+    // in reverse insertion order. An existing index is walked from its top, O(k); otherwise the
+    // fleet is scanned with a bounded heap, O(n log k), rather than building an index that every
+    // later state change would have to maintain for what may be a one-off question.
+    FleetSnapshot top(final AirlineSortOpts sort, final int k) {
+        final int column = SortIndex.column(sort);
+        final long stamp = lock.readLock();
+        try {
+            final SortIndex index = indexes[sort.ordinal()];
+            if (index != null) {
+                return copy(index.descending(), k);
+            }
+
+            // Head is the weakest candidate: lowest value, then earliest slot
+            final PriorityQueue<Integer> heap = new PriorityQueue<>(Math.min(k, size) + 1, (a, b) -> {
+                final int byValue = Double.compare(value(column, a), value(column, b));
+                return byValue != 0 ? byValue : Integer.compare(a, b);
+            });
+            for (int slot = 0; slot < size; slot++) {
+                heap.add(slot);
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+            final int[] slots = new int[heap.size()];
+            for (int i = slots.length - 1; i >= 0; i--) {
+                slots[i] = heap.poll();
+            }
+            return copy(slots, slots.length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // The airplanes whose value of the sort's column lies within [min, max], ascending, with equal
+    // values in insertion order: a subrange walk of an existing index, otherwise a scan
+    FleetSnapshot range(final AirlineSortOpts sort, final double min, final double max) {
+        final int column = SortIndex.column(sort);
+        final long stamp = lock.readLock();
+        try {
+            final SortIndex index = indexes[sort.ordinal()];
+            if (index != null) {
+                return copy(index.range(min, max), Integer.MAX_VALUE);
+            }
+
+            int count = 0;
+            final Integer[] matches = new Integer[size];
+            for (int slot = 0; slot < size; slot++) {
+                final double value = value(column, slot);
+                if (value >= min && value <= max) {
+                    matches[count++] = slot;
+                }
+            }
+            // Stable, so equal values keep slot order
+            Arrays.sort(matches, 0, count, (a, b) -> Double.compare(value(column, a), value(column, b)));
+            final int[] slots = new int[count];
+            for (int i = 0; i < count; i++) {
+                slots[i] = matches[i];
+            }
+            return copy(slots, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private FleetSnapshot copy(final Iterator<Airplane> walk, final int limit) {
+        int[] slots = new int[Math.min(limit, INITIAL_CAPACITY)];
+        int count = 0;
+        while (count < limit && walk.hasNext()) {
+            if (count == slots.length) {
+                slots = Arrays.copyOf(slots, Math.min(limit, count * 2));
+            }
+            slots[count++] = walk.next().slot();
+        }
+        return copy(slots, count);
+    }
+
+    private FleetSnapshot copy(final int[] slots, final int count) {
+        final Airplane[] views = new Airplane[count];
+        final double[] selectedFuelForKilometer = new double[count];
+        final double[] selectedFuelCapacity = new double[count];
+        final double[] selectedCurrentFuel = new double[count];
+        final double[] selectedKilometersFlown = new double[count];
+        for (int i = 0; i < count; i++) {
+            final int slot = slots[i];
+            views[i] = airplanes[slot];
+            selectedFuelForKilometer[i] = fuelForKilometer[slot];
+            selectedFuelCapacity[i] = fuelCapacity[slot];
+            selectedCurrentFuel[i] = currentFuel[slot];
+            selectedKilometersFlown[i] = kilometersFlown[slot];
+        }
+        return new FleetSnapshot(views, selectedFuelForKilometer, selectedFuelCapacity, selectedCurrentFuel,
+                selectedKilometersFlown);
+    }
+
+    // The airplanes added or changed after the given version, in slot order
+    FleetSnapshot changedSince(final long version) {
+        final long stamp = lock.readLock();
+        try {
+            int count = 0;
+            final int[] slots = new int[size];
+            for (int slot = 0; slot < size; slot++) {
+                if (versions[slot] > version) {
+                    slots[count++] = slot;
+                }
+            }
+            return copy(slots, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private double key(final SortIndex index, final int slot) {
+        return index.column() == UNMAPPED ? 0 : value(index.column(), slot);
+    }
+
+    private FleetSnapshot copy(final SortIndex index) {
+        final int count = index.size();
+        final Airplane[] views = new Airplane[count];
+        final double[] sortedFuelForKilometer = new double[count];
+        final double[] sortedFuelCapacity = new double[count];
+        final double[] sortedCurrentFuel = new double[count];
+        final double[] sortedKilometersFlown = new double[count];
+        int i = 0;
+        for (final Airplane airplane : index) {
+            final int slot = airplane.slot();
+            views[i] = airplane;
+            sortedFuelForKilometer[i] = fuelForKilometer[slot];
+            sortedFuelCapacity[i] = fuelCapacity[slot];
+            sortedCurrentFuel[i] = currentFuel[slot];
+            sortedKilometersFlown[i] = kilometersFlown[slot];
+            i++;
+        }
+        return new FleetSnapshot(views, sortedFuelForKilometer, sortedFuelCapacity, sortedCurrentFuel,
+                sortedKilometersFlown);
+    }
+
+    private FleetSnapshot copy() {
+        // Under an optimistic read the fields may be torn; the result is discarded if validation fails
+        final Airplane[] views = airplanes;
+        final int count = Math.min(size, views.length);
+        return new FleetSnapshot(
+                Arrays.copyOf(views, count),
+                Arrays.copyOf(fuelForKilometer, count),
+                Arrays.copyOf(fuelCapacity, count),
+                Arrays.copyOf(currentFuel, count),
+                Arrays.copyOf(kilometersFlown, count));
+    }
+}
@@ -0,0 +1,198 @@
+package com.airport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Fleet-wide refuels and flight schedules. Work is split by airline: each airline's share runs as
+// one task on the common fork-join pool, and within an airline legs are applied in input order,
+// so repeated legs of the same airplane see each other's fuel. A failing item is reported and
+// skipped; it never stops the rest of the operation.
+public final class FleetBulk {
+    // One flight from a schedule; line is the 1-based source line, used in failure reports
+    public record Leg(int line, String airline, String id, double kilometers) { }
+
+    // line is 0 for failures that do not come from a schedule line
+    public record Failure(int line, String airline, String id, String reason) {
+        @Override
+        public String toString() {
+            return (line > 0 ? "Line " + line + ": " : "") + "Error: " + reason;
+        }
+    }
+
+    public record Report(int attempted, int succeeded, List<Failure> failures) { }
+
+    // Applies one airline's share; the returned airplanes are the ones whose state changed
+    public interface AirlineWork {
+        List<Airplane> run(Airline airline);
+    }
+
+    // Lets the caller serialize an airline's share with its other changes and persist the result
+    public interface Applier {
+        void apply(String airline, AirlineWork work) throws IOException;
+    }
+
+    private FleetBulk() {
+    }
+
+    public static Applier direct(final Airport airport) {
+        return (airline, work) -> work.run(airport.findAirline(airline));
+    }
+
+    public static Report refuelAll(final Airport airport, final double threshold, final Applier applier)
+            throws IOException {
+        final List<Airline> airlines = airport.airlines();
+        final List<Callable<Share>> tasks = new ArrayList<>(airlines.size());
+        for (final Airline airline : airlines) {
+            final String name = airline.getName();
+            tasks.add(() -> {
+                final Share share = new Share();
+                try {
+                    applier.apply(name, target -> {
+                        share.attempted = target.size();
+                        final List<Airplane> refueled = target.refuelAll(threshold);
+                        share.succeeded = refueled.size();
+                        return refueled;
+                    });
+                } catch (final RuntimeException e) {
+                    share.failures.add(new Failure(0, name, null, name + ": " + e.getMessage()));
+                }
+                return share;
+            });
+        }
+        return run(tasks);
+    }
+
+    public static Report fly(final Airport airport, final List<Leg> legs, final Applier applier)
+            throws IOException {
+        if (airport.getStatus() == Airport.Status.CLOSED) {
+            throw new IllegalStateException("Airport is closed");
+        }
+
+        final Map<String, List<Leg>> byAirline = new LinkedHashMap<>();
+        for (final Leg leg : legs) {
+            byAirline.computeIfAbsent(leg.airline(), name -> new ArrayList<>()).add(leg);
+        }
+        final List<Callable<Share>> tasks = new ArrayList<>(byAirline.size());
+        for (final Map.Entry<String, List<Leg>> entry : byAirline.entrySet()) {
+            tasks.add(() -> flyAirline(entry.getKey(), entry.getValue(), applier));
+        }
+        return run(tasks);
+    }
+
+    private static Share flyAirline(final String name, final List<Leg> legs, final Applier applier)
+            throws IOException {
+        final Share share = new Share();
+        share.attempted = legs.size();
+        try {
+            applier.apply(name, airline -> {
+                // Distinct airplanes in first-flown order, each journaled once with its final state
+                final Map<String, Airplane> flown = new LinkedHashMap<>();
+                for (final Leg leg : legs) {
+                    try {
+                        flown.putIfAbsent(leg.id(), fly(airline, leg));
+                        share.succeeded++;
+                    } catch (final RuntimeException e) {
+                        share.failures.add(new Failure(leg.line(), name, leg.id(), e.getMessage()));
+                    }
+                }
+                return new ArrayList<>(flown.values());
+            });
+        } catch (final RuntimeException e) {
+            // The airline itself could not be used, e.g. it does not exist; every leg fails
+            share.succeeded = 0;
+            share.failures.clear();
+            for (final Leg leg : legs) {
+                share.failures.add(new Failure(leg.line(), name, leg.id(), e.getMessage()));
+            }
+        }
+        return share;
+    }
+
+    private static Airplane fly(final Airline airline, final Leg leg) {
+        if (!(leg.kilometers() > 0)) {
+            throw new IllegalArgumentException("Kilometers must be positive: " + leg.kilometers());
+        }
+        final Airplane airplane = airline.findAirplane(leg.id());
+        final double needed = airplane.fuelNeeded(leg.kilometers());
+        final double available = airplane.getCurrentFuel();
+        if (needed >= available) {
+            throw new IllegalStateException(String.format("Not enough fuel for %s: needs %.1f, has %.1f",
+                    leg.id(), needed, available));
+        }
+        airplane.fly(leg.kilometers());
+        return airplane;
+    }
+
+    private static Report run(final List<Callable<Share>> tasks) throws IOException {
+        int attempted = 0;
+        int succeeded = 0;
+        final List<Failure> failures = new ArrayList<>();
+        for (final Future<Share> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            final Share share;
+            try {
+                share = future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted during bulk operation", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IllegalStateException("Bulk operation failed", e.getCause());
+            }
+            attempted += share.attempted;
+            succeeded += share.succeeded;
+            failures.addAll(share.failures);
+        }
+        failures.sort(Comparator.comparingInt(Failure::line));
+        return new Report(attempted, succeeded, failures);
+    }
+
+    // Reads "airline,id,km" lines; blank lines, # comments and an "airline,id,km" header are
+    // skipped. The last two commas split, so airline names may contain commas. Lines that do not
+    // parse are returned as failures rather than aborting the whole schedule.
+    public static List<Leg> readLegs(final BufferedReader reader, final List<Failure> failures)
+            throws IOException {
+        final List<Leg> legs = new ArrayList<>();
+        int line = 0;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            text = text.trim();
+            if (text.isEmpty() || text.startsWith("#") || (line == 1 && text.equalsIgnoreCase("airline,id,km"))) {
+                continue;
+            }
+
+            final int kmComma = text.lastIndexOf(',');
+            final int idComma = kmComma > 0 ? text.lastIndexOf(',', kmComma - 1) : -1;
+            if (idComma <= 0) {
+                failures.add(new Failure(line, null, null, "Expected airline,id,km but got: " + text));
+                continue;
+            }
+            final String airline = text.substring(0, idComma).trim();
+            final String id = text.substring(idComma + 1, kmComma).trim();
+            try {
+                legs.add(new Leg(line, airline, id, Double.parseDouble(text.substring(kmComma + 1).trim())));
+            } catch (final NumberFormatException e) {
+                failures.add(new Failure(line, airline, id, "Invalid kilometers: " + text.substring(kmComma + 1)));
+            }
+        }
+        return legs;
+    }
+
+    // Outcome of one airline's task; only touched by the thread running that task
+    private static final class Share {
+        private int attempted;
+        private int succeeded;
+        private final List<Failure> failures = new ArrayList<>();
+    }
+}
@@ -0,0 +1,323 @@
+package com.airport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Filters and aggregations over every airplane of an airport. Each airline is read through one
+// FleetSnapshot, so its airplanes are seen at a single instant. Large airports are split across
+// the common fork-join pool by airline ranges; partial results merge in airline order, so matches
+// always come back in airport order.
+public final class FleetQuery {
+    // Below this many airplanes a range of airlines is evaluated on the calling thread
+    static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    public enum Field {
+        FUEL_PER_KM("fuelPerKm"),
+        CAPACITY("capacity"),
+        FUEL("fuel"),
+        KM("km"),
+        FUEL_RATIO("fuelRatio"),
+        FUEL_NEEDED("fuelNeeded");
+
+        private final String label;
+
+        Field(final String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Field of(final String label) {
+            for (final Field field : values()) {
+                if (field.label.equalsIgnoreCase(label)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown field: " + label);
+        }
+
+        double value(final FleetSnapshot fleet, final int index) {
+            return switch (this) {
+                case FUEL_PER_KM -> fleet.fuelForKilometer(index);
+                case CAPACITY -> fleet.fuelCapacity(index);
+                case FUEL -> fleet.currentFuel(index);
+                case KM -> fleet.kilometersFlown(index);
+                case FUEL_RATIO -> fleet.fuelCapacity(index) > 0
+                        ? fleet.currentFuel(index) / fleet.fuelCapacity(index) : 0;
+                case FUEL_NEEDED -> fleet.fuelCapacity(index) - fleet.currentFuel(index);
+            };
+        }
+    }
+
+    public enum Group {
+        NONE, AIRLINE, MANUFACTURER, MODEL;
+
+        public static Group of(final String label) {
+            return FleetQuery.of(Group.class, "group", label);
+        }
+
+        String key(final String airline, final Airplane airplane) {
+            return switch (this) {
+                case NONE -> "";
+                case AIRLINE -> airline;
+                case MANUFACTURER -> airplane.getManufacturer().getName();
+                case MODEL -> airplane.getModel();
+            };
+        }
+    }
+
+    public enum Aggregate {
+        COUNT, SUM, AVG, MIN, MAX;
+
+        public static Aggregate of(final String label) {
+            return FleetQuery.of(Aggregate.class, "aggregate", label);
+        }
+    }
+
+    private static <E extends Enum<E>> E of(final Class<E> type, final String kind, final String label) {
+        try {
+            return Enum.valueOf(type, label.toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + kind + ": " + label);
+        }
+    }
+
+    // Two-character operators come first so that at equal positions "<=" wins over "<"
+    public enum Op {
+        LE("<="), GE(">="), NE("!="), LT("<"), GT(">"), EQ("=");
+
+        private final String symbol;
+
+        Op(final String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean test(final int comparison) {
+            return switch (this) {
+                case LT -> comparison < 0;
+                case LE -> comparison <= 0;
+                case GT -> comparison > 0;
+                case GE -> comparison >= 0;
+                case EQ -> comparison == 0;
+                case NE -> comparison != 0;
+            };
+        }
+    }
+
+    // One group of an aggregation; value is NaN for avg/min/max over no airplanes
+    public record Row(String group, long count, double value) { }
+
+    public record Match(String airline, Airplane airplane) { }
+
+    private interface Condition {
+        boolean test(String airline, FleetSnapshot fleet, int index);
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private Group group = Group.NONE;
+
+    public FleetQuery where(final Field field, final Op op, final double value) {
+        conditions.add((airline, fleet, index) -> op.test(Double.compare(field.value(fleet, index), value)));
+        return this;
+    }
+
+    public FleetQuery where(final Group key, final Op op, final String value) {
+        if (key == Group.NONE) {
+            throw new IllegalArgumentException("Condition needs a field or airline/manufacturer/model");
+        }
+        conditions.add((airline, fleet, index) ->
+                op.test(key.key(airline, fleet.airplane(index)).compareTo(value)));
+        return this;
+    }
+
+    // Parses "<field><op><value>", e.g. km>1000, fuelRatio<0.2 or manufacturer=Boeing; the first
+    // operator splits, so text values may contain operator characters themselves
+    public FleetQuery where(final String condition) {
+        Op op = null;
+        int at = -1;
+        for (final Op candidate : Op.values()) {
+            final int index = condition.indexOf(candidate.symbol);
+            if (index > 0 && (at < 0 || index < at)) {
+                op = candidate;
+                at = index;
+            }
+        }
+        if (op == null) {
+            throw new IllegalArgumentException("Invalid condition: " + condition);
+        }
+
+        final String name = condition.substring(0, at);
+        final String value = condition.substring(at + op.symbol.length());
+        for (final Group key : Group.values()) {
+            if (key != Group.NONE && key.name().equalsIgnoreCase(name)) {
+                return where(key, op, value);
+            }
+        }
+        try {
+            return where(Field.of(name), op, Double.parseDouble(value));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number in condition: " + condition);
+        }
+    }
+
+    public FleetQuery groupBy(final Group group) {
+        this.group = group;
+        return this;
+    }
+
+    // Matching airplanes in airport order, airlines first, then each airline's own order
+    public List<Match> select(final Airport airport) {
+        return evaluate(airport, null).matches;
+    }
+
+    // One row per group, ordered by group name; count ignores the field
+    public List<Row> aggregate(final Airport airport, final Aggregate aggregate, final Field field) {
+        if (field == null && aggregate != Aggregate.COUNT) {
+            throw new IllegalArgumentException(aggregate.name().toLowerCase(Locale.ROOT) + " needs a field");
+        }
+
+        final Map<String, Stats> groups = new TreeMap<>(evaluate(airport, field != null ? field : Field.KM).groups);
+        if (groups.isEmpty() && group == Group.NONE) {
+            groups.put("", new Stats());
+        }
+        final List<Row> rows = new ArrayList<>(groups.size());
+        for (final Map.Entry<String, Stats> entry : groups.entrySet()) {
+            final Stats stats = entry.getValue();
+            rows.add(new Row(entry.getKey(), stats.count, stats.value(aggregate)));
+        }
+        return rows;
+    }
+
+    private Partial evaluate(final Airport airport, final Field field) {
+        final List<Airline> airlines = airport.airlines();
+        final long[] offsets = new long[airlines.size() + 1];
+        for (int i = 0; i < airlines.size(); i++) {
+            offsets[i + 1] = offsets[i] + airlines.get(i).size();
+        }
+        final Evaluation root = new Evaluation(List.copyOf(conditions), group, airlines, offsets, 0, airlines.size(),
+                field);
+        return offsets[airlines.size()] < PARALLEL_THRESHOLD ? root.compute() : ForkJoinPool.commonPool().invoke(root);
+    }
+
+    // Static, so the tasks carry the query's conditions and grouping as they were when it started.
+    // RecursiveTask is Serializable, but evaluations are never serialized.
+    @SuppressWarnings("serial")
+    private static final class Evaluation extends RecursiveTask<Partial> {
+        private final List<Condition> conditions;
+        private final Group group;
+        private final List<Airline> airlines;
+        private final long[] offsets;
+        private final int from;
+        private final int to;
+        private final Field field;
+
+        Evaluation(final List<Condition> conditions, final Group group, final List<Airline> airlines,
+                   final long[] offsets, final int from, final int to, final Field field) {
+            this.conditions = conditions;
+            this.group = group;
+            this.airlines = airlines;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+            this.field = field;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > 1 && offsets[to] - offsets[from] >= PARALLEL_THRESHOLD) {
+                final int middle = (from + to) >>> 1;
+                final Evaluation left = new Evaluation(conditions, group, airlines, offsets, from, middle, field);
+                final Evaluation right = new Evaluation(conditions, group, airlines, offsets, middle, to, field);
+                left.fork();
+                final Partial rightResult = right.compute();
+                return left.join().merge(rightResult);
+            }
+
+            final Partial partial = new Partial();
+            for (int i = from; i < to; i++) {
+                scan(airlines.get(i), partial);
+            }
+            return partial;
+        }
+
+        private void scan(final Airline airline, final Partial partial) {
+            final String name = airline.getName();
+            final FleetSnapshot fleet = airline.snapshot();
+            for (int i = 0; i < fleet.size(); i++) {
+                if (!matches(name, fleet, i)) {
+                    continue;
+                }
+                if (field == null) {
+                    partial.matches.add(new Match(name, fleet.airplane(i)));
+                } else {
+                    partial.groups.computeIfAbsent(group.key(name, fleet.airplane(i)), key -> new Stats())
+                            .add(field.value(fleet, i));
+                }
+            }
+        }
+
+        private boolean matches(final String airline, final FleetSnapshot fleet, final int index) {
+            for (final Condition condition : conditions) {
+                if (!condition.test(airline, fleet, index)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Partial {
+        private final List<Match> matches = new ArrayList<>();
+        private final Map<String, Stats> groups = new HashMap<>();
+
+        // Right-hand airlines come after this range, so matches keep airport order
+        Partial merge(final Partial right) {
+            matches.addAll(right.matches);
+            right.groups.forEach((key, stats) -> groups.merge(key, stats, Stats::merge));
+            return this;
+        }
+    }
+
+    private static final class Stats {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(final double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        Stats merge(final Stats other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            return this;
+        }
+
+        double value(final Aggregate aggregate) {
+            if (count == 0) {
+                return aggregate == Aggregate.COUNT || aggregate == Aggregate.SUM ? 0 : Double.NaN;
+            }
+            return switch (aggregate) {
+                case COUNT -> count;
+                case SUM -> sum;
+                case AVG -> sum / count;
+                case MIN -> min;
+                case MAX -> max;
+            };
+        }
+    }
+}
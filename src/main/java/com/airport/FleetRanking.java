@@ -0,0 +1,118 @@
+package com.airport;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// Top-k and range selections over kilometers, fuel or capacity. Each airline answers from its
+// Fleet, walking a sort index if one exists and otherwise scanning with a bounded heap; airport-wide
+// selections ask the airlines in parallel on the common fork-join pool once the airport is large,
+// then merge the already ordered per-airline results, so no fleet is ever fully sorted.
+final class FleetRanking {
+    private FleetRanking() {
+    }
+
+    static AirlineSortOpts sort(final FleetQuery.Field field) {
+        return switch (field) {
+            case KM -> AirlineSortOpts.BY_KM;
+            case FUEL -> AirlineSortOpts.BY_FUEL;
+            case CAPACITY -> AirlineSortOpts.BY_CAPACITY;
+            default -> throw new IllegalArgumentException(
+                    "Not a ranked field: " + field.label() + " (use km, fuel or capacity)");
+        };
+    }
+
+    static void checkTop(final int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+    }
+
+    static void checkRange(final double min, final double max) {
+        if (!(min <= max)) {
+            throw new IllegalArgumentException("Range must satisfy min <= max");
+        }
+    }
+
+    // Highest first; equal values keep airport order between airlines
+    static List<FleetQuery.Match> top(final Airport airport, final FleetQuery.Field field, final int k) {
+        checkTop(k);
+        final AirlineSortOpts sort = sort(field);
+        return merge(airport.airlines(), airline -> airline.fleet().top(sort, k), field, k, true);
+    }
+
+    // Ascending; equal values keep airport order between airlines
+    static List<FleetQuery.Match> range(final Airport airport, final FleetQuery.Field field, final double min,
+                                        final double max) {
+        checkRange(min, max);
+        final AirlineSortOpts sort = sort(field);
+        return merge(airport.airlines(), airline -> airline.fleet().range(sort, min, max), field, Integer.MAX_VALUE,
+                false);
+    }
+
+    private record Cursor(int airline, int index, double value) { }
+
+    private static List<FleetQuery.Match> merge(final List<Airline> airlines,
+                                                final Function<Airline, FleetSnapshot> select,
+                                                final FleetQuery.Field field, final int limit,
+                                                final boolean descending) {
+        final List<FleetSnapshot> results = perAirline(airlines, select);
+        final Comparator<Cursor> byValue = Comparator.comparingDouble(Cursor::value);
+        final PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, results.size()),
+                (descending ? byValue.reversed() : byValue).thenComparingInt(Cursor::airline));
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).size() > 0) {
+                heads.add(new Cursor(i, 0, field.value(results.get(i), 0)));
+            }
+        }
+
+        final List<FleetQuery.Match> matches = new ArrayList<>();
+        while (matches.size() < limit && !heads.isEmpty()) {
+            final Cursor head = heads.poll();
+            final FleetSnapshot fleet = results.get(head.airline());
+            matches.add(new FleetQuery.Match(airlines.get(head.airline()).getName(), fleet.airplane(head.index())));
+            final int next = head.index() + 1;
+            if (next < fleet.size()) {
+                heads.add(new Cursor(head.airline(), next, field.value(fleet, next)));
+            }
+        }
+        return matches;
+    }
+
+    private static List<FleetSnapshot> perAirline(final List<Airline> airlines,
+                                                  final Function<Airline, FleetSnapshot> select) {
+        long airplanes = 0;
+        for (final Airline airline : airlines) {
+            airplanes += airline.size();
+        }
+        final List<FleetSnapshot> results = new ArrayList<>(airlines.size());
+        if (airplanes < FleetQuery.PARALLEL_THRESHOLD) {
+            for (final Airline airline : airlines) {
+                results.add(select.apply(airline));
+            }
+            return results;
+        }
+
+        final List<Callable<FleetSnapshot>> tasks = new ArrayList<>(airlines.size());
+        for (final Airline airline : airlines) {
+            tasks.add(() -> select.apply(airline));
+        }
+        for (final Future<FleetSnapshot> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ranking interrupted", e);
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("Ranking failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,51 @@
+package com.airport;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Immutable copy of a fleet's columns taken under one lock stamp, so exports and listings see
+// every airplane of an airline at the same instant while fly/refuel keep running.
+final class FleetSnapshot {
+    private final Airplane[] airplanes;
+    private final double[] fuelForKilometer;
+    private final double[] fuelCapacity;
+    private final double[] currentFuel;
+    private final double[] kilometersFlown;
+
+    FleetSnapshot(final Airplane[] airplanes, final double[] fuelForKilometer, final double[] fuelCapacity,
+                  final double[] currentFuel, final double[] kilometersFlown) {
+        this.airplanes = airplanes;
+        this.fuelForKilometer = fuelForKilometer;
+        this.fuelCapacity = fuelCapacity;
+        this.currentFuel = currentFuel;
+        this.kilometersFlown = kilometersFlown;
+    }
+
+    int size() {
+        return airplanes.length;
+    }
+
+    Airplane airplane(final int index) {
+        return airplanes[index];
+    }
+
+    double fuelForKilometer(final int index) {
+        return fuelForKilometer[index];
+    }
+
+    double fuelCapacity(final int index) {
+        return fuelCapacity[index];
+    }
+
+    double currentFuel(final int index) {
+        return currentFuel[index];
+    }
+
+    double kilometersFlown(final int index) {
+        return kilometersFlown[index];
+    }
+
+    List<Airplane> airplanes() {
+        return Arrays.asList(airplanes);
+    }
+}
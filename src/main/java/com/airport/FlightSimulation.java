@@ -0,0 +1,148 @@
+package com.airport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Discrete-event simulation of fleet operations. Every airline is an independent partition with
+// its own event queue and random stream, run as one task on the common (work-stealing) fork-join
+// pool. The streams are split from the seed in airline order before any task starts, and events
+// tie-break on a sequence number, so a fixed seed gives the same flights whatever the scheduling.
+//
+// Each airplane repeatedly draws a leg length; when fuelNeeded says the tank cannot cover it, a
+// refuel event is scheduled first. Legs longer than a full tank allows are shortened to 90% of
+// the airplane's range; an airplane that cannot fly at all is grounded for the rest of the run.
+public final class FlightSimulation {
+    static final double CRUISE_KMH = 800;
+    static final double TURNAROUND_HOURS = 1;
+    static final double REFUEL_HOURS = 0.5;
+    // Every departure schedules the next, so the horizon bounds the run; a year of flights at most
+    static final double MAX_HOURS = 24 * 366;
+
+    public record Config(long seed, double hours, double minLegKm, double maxLegKm) {
+        public Config {
+            if (!(hours > 0 && hours <= MAX_HOURS)) {
+                throw new IllegalArgumentException("Simulated hours must be positive and at most " + (long) MAX_HOURS);
+            }
+            if (!(minLegKm > 0) || !(maxLegKm >= minLegKm) || !Double.isFinite(maxLegKm)) {
+                throw new IllegalArgumentException("Leg lengths must satisfy 0 < min <= max < infinity");
+            }
+        }
+
+        public Config(final long seed, final double hours) {
+            this(seed, hours, 200, 2000);
+        }
+    }
+
+    public record AirlineResult(String airline, long legs, long refuels, long grounded, double kilometers) { }
+
+    public record Report(List<AirlineResult> airlines, long legs, long refuels, double kilometers,
+                         long elapsedNanos) {
+        public double legsPerSecond() {
+            return elapsedNanos > 0 ? legs * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    private enum Kind {
+        DEPART, REFUEL
+    }
+
+    // Ties on time resolve by sequence, i.e. by the order the events were scheduled
+    private record Event(double time, long sequence, int airplane, Kind kind, double kilometers)
+            implements Comparable<Event> {
+        @Override
+        public int compareTo(final Event other) {
+            final int byTime = Double.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private FlightSimulation() {
+    }
+
+    // Flies the airplanes of the given airport in place
+    public static Report run(final Airport airport, final Config config) {
+        final List<Airline> airlines = airport.airlines();
+        final SplittableRandom root = new SplittableRandom(config.seed());
+        final List<Callable<AirlineResult>> tasks = new ArrayList<>(airlines.size());
+        for (final Airline airline : airlines) {
+            final SplittableRandom random = root.split();
+            tasks.add(() -> simulate(airline, config, random));
+        }
+
+        final long start = System.nanoTime();
+        final List<AirlineResult> results = new ArrayList<>(airlines.size());
+        long legs = 0;
+        long refuels = 0;
+        double kilometers = 0;
+        for (final Future<AirlineResult> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            final AirlineResult result;
+            try {
+                result = future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Simulation interrupted", e);
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("Simulation failed: " + e.getCause().getMessage(), e.getCause());
+            }
+            results.add(result);
+            legs += result.legs();
+            refuels += result.refuels();
+            kilometers += result.kilometers();
+        }
+        return new Report(results, legs, refuels, kilometers, System.nanoTime() - start);
+    }
+
+    private static AirlineResult simulate(final Airline airline, final Config config, final SplittableRandom random) {
+        final List<Airplane> airplanes = airline.getAirplanes();
+        final PriorityQueue<Event> events = new PriorityQueue<>();
+        long sequence = 0;
+        for (int i = 0; i < airplanes.size(); i++) {
+            // Staggered first departures, so the fleet does not move in lockstep
+            events.add(new Event(random.nextDouble() * TURNAROUND_HOURS, sequence++, i, Kind.DEPART, 0));
+        }
+
+        long legs = 0;
+        long refuels = 0;
+        long grounded = 0;
+        double kilometers = 0;
+        Event event;
+        while ((event = events.poll()) != null && event.time() <= config.hours()) {
+            final Airplane airplane = airplanes.get(event.airplane());
+            if (event.kind() == Kind.REFUEL) {
+                airplane.refuel(airplane.getFuelCapacity());
+                refuels++;
+                events.add(new Event(event.time() + REFUEL_HOURS, sequence++, event.airplane(), Kind.DEPART,
+                        event.kilometers()));
+                continue;
+            }
+
+            final double planned = event.kilometers() > 0 ? event.kilometers()
+                    : config.minLegKm() + random.nextDouble() * (config.maxLegKm() - config.minLegKm());
+            final double range = airplane.getFuelForKilometer() > 0
+                    ? airplane.getFuelCapacity() / airplane.getFuelForKilometer() : Double.POSITIVE_INFINITY;
+            final double leg = Math.min(planned, range * 0.9);
+            if (!(airplane.fuelNeeded(leg) < airplane.getCurrentFuel())) {
+                if (event.kilometers() > 0 || !(airplane.fuelNeeded(leg) < airplane.getFuelCapacity())) {
+                    // Still short right after a refuel, e.g. an empty tank of zero capacity
+                    grounded++;
+                    continue;
+                }
+                events.add(new Event(event.time(), sequence++, event.airplane(), Kind.REFUEL, leg));
+                continue;
+            }
+
+            airplane.fly(leg);
+            legs++;
+            kilometers += leg;
+            events.add(new Event(event.time() + leg / CRUISE_KMH + TURNAROUND_HOURS, sequence++, event.airplane(),
+                    Kind.DEPART, 0));
+        }
+        return new AirlineResult(airline.getName(), legs, refuels, grounded, kilometers);
+    }
+}
@@ -0,0 +1,290 @@
+package com.airport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Append-only log of mutations applied since the last snapshot. Each line is a JSON array
+// of the operation name followed by its arguments, so one command costs one small append.
+public class Journal {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Op {
+        AIRPORT_RENAME,
+        AIRPORT_STATUS,
+        AIRLINE_ADD,
+        AIRLINE_REMOVE,
+        AIRLINE_RENAME,
+        AIRPLANE_ADD,
+        AIRPLANE_REMOVE,
+        AIRPLANE_STATE
+    }
+
+    private final Path path;
+    private final long compactThreshold;
+    // Entries held back while buffering, written by flush in one append
+    private StringBuilder pending;
+    // Open buffer() calls; nested pairs, e.g. a bulk line inside a batch, leave the outer one buffering
+    private int bufferDepth;
+    // Set while group commit is on: appends schedule one flush per interval instead of writing
+    private ScheduledExecutorService flusher;
+    private long flushIntervalMillis;
+    private boolean flushScheduled;
+    // Whether a torn tail left by an earlier process was repaired; appends must not continue it
+    private boolean tailRepaired;
+
+    public Journal(final Path path, final long compactThreshold) {
+        if (compactThreshold <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive");
+        }
+
+        this.path = path;
+        this.compactThreshold = compactThreshold;
+    }
+
+    // Synchronized so entries from concurrent commands never interleave within a line
+    public synchronized void append(final Op op, final String... args) throws IOException {
+        final String entry = encode(op, args);
+        if (pending != null) {
+            pending.append(entry);
+            if (flusher != null && !flushScheduled) {
+                flushScheduled = true;
+                flusher.schedule(this::scheduledFlush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        write(entry);
+    }
+
+    private synchronized void scheduledFlush() {
+        flushScheduled = false;
+        try {
+            flush();
+        } catch (final IOException e) {
+            System.err.println("Warning: Could not write journal - " + e.getMessage());
+        }
+    }
+
+    // Group commit: entries appended within one interval reach the file in a single write
+    public synchronized void startGroupCommit(final long intervalMillis) {
+        if (intervalMillis <= 0 || flusher != null) {
+            return;
+        }
+
+        flushIntervalMillis = intervalMillis;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "journal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (pending == null) {
+            pending = new StringBuilder();
+        }
+    }
+
+    // Flushes whatever is pending; safe to call more than once, e.g. on exit and from a shutdown hook
+    public synchronized void stopGroupCommit() throws IOException {
+        if (flusher == null) {
+            return;
+        }
+
+        flusher.shutdownNow();
+        flusher = null;
+        flushScheduled = false;
+        flush();
+        if (bufferDepth == 0) {
+            pending = null;
+        }
+    }
+
+    private void write(final CharSequence entries) throws IOException {
+        final long start = Metrics.start();
+        repairTail();
+        final byte[] bytes = entries.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(path, bytes, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Metrics.count("bytes.journal", bytes.length);
+        Metrics.stop("journal.write", start);
+    }
+
+    // Holds entries in memory until flush, so a burst of commands costs one write instead of one each
+    public synchronized void buffer() {
+        bufferDepth++;
+        if (pending == null) {
+            pending = new StringBuilder();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (pending != null && pending.length() > 0) {
+            write(pending);
+            pending.setLength(0);
+        }
+    }
+
+    // Ends the matching buffer() call. Only the outermost one flushes and returns to writing every
+    // entry immediately, and even then group commit keeps buffering.
+    public synchronized void unbuffer() throws IOException {
+        if (bufferDepth > 0 && --bufferDepth > 0) {
+            return;
+        }
+        flush();
+        if (flusher == null) {
+            pending = null;
+        }
+    }
+
+    static String encode(final Op op, final String... args) throws JsonProcessingException {
+        final String[] entry = new String[args.length + 1];
+        entry[0] = op.name();
+        System.arraycopy(args, 0, entry, 1, args.length);
+        return MAPPER.writeValueAsString(entry) + "\n";
+    }
+
+    // An interrupted append can leave a last line without its newline. A complete entry only gets
+    // the newline; a partial one is cut off at the last newline, so the next append starts a line.
+    private synchronized void repairTail() throws IOException {
+        if (tailRepaired) {
+            return;
+        }
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final long size = channel.size();
+                final long end = lineEnd(channel, size);
+                if (end < size) {
+                    final ByteBuffer tail = ByteBuffer.allocate(Math.toIntExact(size - end));
+                    readFully(channel, tail, end);
+                    if (isEntry(tail.array())) {
+                        channel.write(ByteBuffer.wrap(new byte[] {'\n'}), size);
+                    } else {
+                        channel.truncate(end);
+                        System.err.println("Warning: Dropped a torn journal entry at the end of " + path);
+                    }
+                    channel.force(false);
+                }
+            }
+        }
+        tailRepaired = true;
+    }
+
+    // Offset just past the last newline, 0 if there is none
+    private static long lineEnd(final FileChannel channel, final long size) throws IOException {
+        final ByteBuffer chunk = ByteBuffer.allocate(4096);
+        long end = size;
+        while (end > 0) {
+            final long from = Math.max(0, end - chunk.capacity());
+            chunk.clear().limit(Math.toIntExact(end - from));
+            readFully(channel, chunk, from);
+            for (int i = chunk.position() - 1; i >= 0; i--) {
+                if (chunk.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            end = from;
+        }
+        return 0;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Journal shrank while reading");
+            }
+        }
+    }
+
+    private static boolean isEntry(final byte[] line) {
+        try {
+            final String[] entry = MAPPER.readValue(line, String[].class);
+            return entry != null && entry.length > 0;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    public int replay(final Airport airport) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        final long start = Metrics.start();
+        // Recovery always looks at the tail, whatever this instance appended before
+        synchronized (this) {
+            tailRepaired = false;
+            repairTail();
+        }
+        int applied = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                final String[] entry;
+                try {
+                    entry = MAPPER.readValue(line, String[].class);
+                } catch (final JsonProcessingException e) {
+                    throw new IOException("Corrupt journal entry at line " + lineNumber, e);
+                }
+                try {
+                    apply(airport, entry);
+                } catch (final RuntimeException e) {
+                    throw new IOException("Cannot replay journal entry at line " + lineNumber + ": "
+                            + e.getMessage(), e);
+                }
+                applied++;
+            }
+        }
+        Metrics.stop("journal.replay", start);
+        return applied;
+    }
+
+    static void apply(final Airport airport, final String[] entry) {
+        final Op op = Op.valueOf(entry[0]);
+        switch (op) {
+            case AIRPORT_RENAME -> airport.updateName(entry[1]);
+            case AIRPORT_STATUS -> airport.setStatus(Airport.Status.valueOf(entry[1]));
+            case AIRLINE_ADD -> airport.addAirline(new Airline(entry[1], Integer.parseInt(entry[2])));
+            case AIRLINE_REMOVE -> airport.removeAirline(entry[1]);
+            case AIRLINE_RENAME -> airport.findAirline(entry[1]).updateName(entry[2]);
+            case AIRPLANE_ADD -> airport.findAirline(entry[1]).addAirplane(new Airplane(
+                    entry[2],
+                    entry[3],
+                    Manufacturer.of(entry[4], entry[5]),
+                    Double.parseDouble(entry[6]),
+                    Double.parseDouble(entry[7])));
+            case AIRPLANE_REMOVE -> airport.findAirline(entry[1]).removeAirplane(entry[2]);
+            case AIRPLANE_STATE -> airport.findAirline(entry[1]).findAirplane(entry[2])
+                    .restoreState(Double.parseDouble(entry[3]), Double.parseDouble(entry[4]));
+        }
+    }
+
+    public synchronized boolean needsCompaction() throws IOException {
+        final long buffered = pending != null ? pending.length() : 0;
+        return buffered + (Files.exists(path) ? Files.size(path) : 0) >= compactThreshold;
+    }
+
+    // Buffered entries are dropped too: the snapshot that replaces the journal already contains them
+    public synchronized void reset() throws IOException {
+        if (pending != null) {
+            pending.setLength(0);
+        }
+        Files.deleteIfExists(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+}
@@ -1,6 +1,13 @@
 package com.airport;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class Manufacturer {
+    // Fleets reference a handful of manufacturers, so every loader shares one instance per pair
+    private static final Map<Manufacturer, Manufacturer> REGISTRY = new ConcurrentHashMap<>();
+
     private final String name;
     private final String country;
 
@@ -9,6 +16,12 @@ public class Manufacturer {
         this.country = country;
     }
 
+    public static Manufacturer of(final String name, final String country) {
+        final Manufacturer candidate = new Manufacturer(name, country);
+        final Manufacturer existing = REGISTRY.putIfAbsent(candidate, candidate);
+        return existing != null ? existing : candidate;
+    }
+
     public String getName() {
         return name;
     }
@@ -17,6 +30,25 @@ public class Manufacturer {
         return country;
     }
 
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final Manufacturer manufacturer = (Manufacturer) o;
+        return Objects.equals(name, manufacturer.name) && Objects.equals(country, manufacturer.country);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, country);
+    }
+
     @Override
     public String toString() {
         return String.format("%s (%s)", name, country);
@@ -0,0 +1,89 @@
+package com.airport;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Serves an Airport straight from a memory-mapped BinarySnapshot file. Only the airport header
+// and the airline table are decoded on open; an airline's airplanes are decoded on first access
+// and their fuel/kilometer fields are written back into the fixed-width records in place.
+final class MappedFleetStore {
+    private final MappedByteBuffer buffer;
+    private final BinarySnapshot.Layout layout;
+    private final Airport airport;
+    private volatile boolean open = true;
+
+    private MappedFleetStore(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large: " + size + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        layout = new BinarySnapshot.Layout(buffer, path);
+
+        airport = new Airport(layout.airportName(), layout.maxAirlines());
+        for (int i = 0; i < layout.airlineCount(); i++) {
+            final int airline = i;
+            final int airplaneCount = layout.airplaneCount(i);
+            airport.addAirline(new Airline(layout.airlineName(i), layout.maxAirplanes(i), new Airline.Loader() {
+                @Override
+                public int size() {
+                    return airplaneCount;
+                }
+
+                @Override
+                public void load(final Fleet fleet) {
+                    loadAirplanes(airline, fleet);
+                }
+            }));
+        }
+        airport.setStatus(layout.status());
+    }
+
+    static MappedFleetStore open(final Path path) throws IOException {
+        final long start = Metrics.start();
+        final MappedFleetStore store = new MappedFleetStore(path);
+        Metrics.stop("import.mapped", start);
+        return store;
+    }
+
+    Airport getAirport() {
+        return airport;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    // Detaches the model from the file, e.g. once a compaction replaced it with a new snapshot.
+    // Callers must have loaded every airline first; unloaded airlines cannot be read afterwards.
+    void close() {
+        open = false;
+    }
+
+    void writeState(final int recordOffset, final double currentFuel, final double kilometersFlown) {
+        buffer.putDouble(recordOffset + BinarySnapshot.CURRENT_FUEL_OFFSET, currentFuel);
+        buffer.putDouble(recordOffset + BinarySnapshot.KILOMETERS_OFFSET, kilometersFlown);
+    }
+
+    void force() {
+        if (open) {
+            buffer.force();
+        }
+    }
+
+    private void loadAirplanes(final int airline, final Fleet fleet) {
+        if (!open) {
+            throw new IllegalStateException("Snapshot store is closed");
+        }
+
+        fleet.attachStore(this);
+        layout.readAirplanes(airline, fleet, true);
+    }
+}
@@ -0,0 +1,224 @@
+package com.airport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Process-wide latency histograms and counters. With -Dairport.metrics=false every hook reduces
+// to a constant-false branch and no clock is read. Timings are recorded in nanoseconds.
+final class Metrics {
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("airport.metrics"));
+    static final String OBJECT_NAME = "com.airport:type=Metrics";
+
+    private static final Map<String, Histogram> LATENCIES = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    static void stop(final String name, final long start) {
+        if (ENABLED) {
+            histogram(name).record(System.nanoTime() - start);
+        }
+    }
+
+    static void count(final String name, final long delta) {
+        if (ENABLED) {
+            counter(name).add(delta);
+        }
+    }
+
+    static void reset() {
+        LATENCIES.clear();
+        COUNTERS.clear();
+    }
+
+    private static Histogram histogram(final String name) {
+        Histogram histogram = LATENCIES.get(name);
+        if (histogram == null) {
+            final Histogram created = new Histogram();
+            histogram = LATENCIES.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static LongAdder counter(final String name) {
+        LongAdder counter = COUNTERS.get(name);
+        if (counter == null) {
+            final LongAdder created = new LongAdder();
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    static String report() {
+        if (!ENABLED) {
+            return "Metrics are disabled (-Dairport.metrics=false)";
+        }
+
+        final StringBuilder report = new StringBuilder(String.format("%-28s %10s %10s %10s %10s%n",
+                "Latency (ms)", "count", "p50", "p99", "max"));
+        for (final Map.Entry<String, Histogram> entry : new TreeMap<>(LATENCIES).entrySet()) {
+            final Histogram histogram = entry.getValue();
+            report.append(String.format("%-28s %10d %10.3f %10.3f %10.3f%n", entry.getKey(), histogram.count(),
+                    millis(histogram.percentile(0.50)), millis(histogram.percentile(0.99)), millis(histogram.max())));
+        }
+        report.append(String.format("%-28s %10s%n", "Counter", "value"));
+        for (final Map.Entry<String, LongAdder> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            report.append(String.format("%-28s %10d%n", entry.getKey(), entry.getValue().sum()));
+        }
+        return report.toString().stripTrailing();
+    }
+
+    static String toJson() {
+        final Map<String, Object> latencies = new LinkedHashMap<>();
+        for (final Map.Entry<String, Histogram> entry : new TreeMap<>(LATENCIES).entrySet()) {
+            final Histogram histogram = entry.getValue();
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", histogram.count());
+            summary.put("p50Millis", millis(histogram.percentile(0.50)));
+            summary.put("p99Millis", millis(histogram.percentile(0.99)));
+            summary.put("maxMillis", millis(histogram.max()));
+            latencies.put(entry.getKey(), summary);
+        }
+        final Map<String, Object> counters = new LinkedHashMap<>();
+        for (final Map.Entry<String, LongAdder> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        stats.put("latencies", latencies);
+        stats.put("counters", counters);
+        try {
+            // Built on demand: most invocations never print stats and should not pay for a mapper
+            return new ObjectMapper().writeValueAsString(stats);
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode metrics", e);
+        }
+    }
+
+    static long counterValue(final String name) {
+        final LongAdder counter = COUNTERS.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    static long latencyCount(final String name) {
+        final Histogram histogram = LATENCIES.get(name);
+        return histogram != null ? histogram.count() : 0;
+    }
+
+    // Exposes the same data as the stats command to JMX clients such as jconsole
+    static void registerMBean() throws JMException {
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean() {
+                @Override
+                public String getStatsJson() {
+                    return toJson();
+                }
+
+                @Override
+                public String getReport() {
+                    return report();
+                }
+
+                @Override
+                public void reset() {
+                    Metrics.reset();
+                }
+            }, name);
+        }
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    // Log-linear buckets: exact below 16ns, then 8 sub-buckets per power of two, so any reported
+    // percentile is within 12.5% of the recorded value while recording stays a few atomic adds
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        // A plain CAS loop rather than LongAccumulator(Math::max), whose lambda costs start-up time
+        private final AtomicLong max = new AtomicLong();
+
+        void record(final long value) {
+            final long nanos = Math.max(0, value);
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            long seen = max.get();
+            while (nanos > seen && !max.compareAndSet(seen, nanos)) {
+                seen = max.get();
+            }
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // Upper bound of the bucket holding the requested rank, capped by the exact maximum
+        long percentile(final double quantile) {
+            final long total = count();
+            if (total == 0) {
+                return 0;
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max());
+                }
+            }
+            return max();
+        }
+
+        static int bucket(final long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            final int exponent = 63 - Long.numberOfLeadingZeros(value);
+            final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBound(final int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            final long subBucket = bucket % SUB_BUCKETS;
+            final long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.airport;
+
+// Management interface registered by Metrics.registerMBean
+public interface MetricsMXBean {
+    String getStatsJson();
+
+    String getReport();
+
+    void reset();
+}
@@ -0,0 +1,175 @@
+package com.airport;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+// Immutable list with structural sharing: a 32-way trie of full leaf arrays plus a tail array of
+// up to 32 elements. Appends and point updates copy only the path to the changed leaf (at most
+// log32(n) arrays of 32), and every older version stays valid, so readers can hold a version as
+// a snapshot without copying it. Removal from the tail copies the tail; removal from the trie
+// rebuilds the vector, which is acceptable because removals are rare next to reads and appends.
+final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[0];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, EMPTY_NODE);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(final int size, final int shift, final Object[] root, final Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int tailOffset() {
+        return size - tail.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(final int index) {
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    private Object[] leafFor(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    PersistentVector<E> append(final E element) {
+        if (tail.length < WIDTH) {
+            final Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+
+        // The full tail becomes a leaf of the trie; the root grows a level when the trie is full
+        final Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[]{root, newPath(shift, tail)};
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    private Object[] pushTail(final int level, final Object[] parent, final Object[] leaf) {
+        final int child = ((size - 1) >>> level) & MASK;
+        final Object[] node = Arrays.copyOf(parent, child + 1);
+        if (level == BITS) {
+            node[child] = leaf;
+        } else {
+            node[child] = child < parent.length
+                    ? pushTail(level - BITS, (Object[]) parent[child], leaf)
+                    : newPath(level - BITS, leaf);
+        }
+        return node;
+    }
+
+    private static Object[] newPath(final int level, final Object[] leaf) {
+        return level == 0 ? leaf : new Object[]{newPath(level - BITS, leaf)};
+    }
+
+    // Copy with one element replaced
+    PersistentVector<E> with(final int index, final E element) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index >= tailOffset()) {
+            final Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, with(shift, root, index, element), tail);
+    }
+
+    private static Object[] with(final int level, final Object[] parent, final int index, final Object element) {
+        final Object[] node = parent.clone();
+        if (level == 0) {
+            node[index & MASK] = element;
+        } else {
+            final int child = (index >>> level) & MASK;
+            node[child] = with(level - BITS, (Object[]) parent[child], index, element);
+        }
+        return node;
+    }
+
+    // Copy without the element at index; later elements move down by one
+    PersistentVector<E> without(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        final int offset = tailOffset();
+        if (index >= offset && tail.length > 1) {
+            final Object[] newTail = new Object[tail.length - 1];
+            System.arraycopy(tail, 0, newTail, 0, index - offset);
+            System.arraycopy(tail, index - offset + 1, newTail, index - offset, tail.length - 1 - (index - offset));
+            return new PersistentVector<>(size - 1, shift, root, newTail);
+        }
+
+        PersistentVector<E> rebuilt = empty();
+        int i = 0;
+        for (final E element : this) {
+            if (i++ != index) {
+                rebuilt = rebuilt.append(element);
+            }
+        }
+        return rebuilt;
+    }
+
+    // Walks leaf by leaf instead of descending the trie for every element
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int index;
+            private Object[] leaf = size > 0 ? leafFor(0) : EMPTY_NODE;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if (index > 0 && (index & MASK) == 0) {
+                    leaf = leafFor(index);
+                }
+                return (E) leaf[index++ & MASK];
+            }
+        };
+    }
+}
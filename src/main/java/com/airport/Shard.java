@@ -0,0 +1,140 @@
+package com.airport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// One airport's persisted state: a BinarySnapshot, the journal of changes since it was written
+// and the lock that guards replacing the model. Each shard keeps its own files, so saving or
+// compacting one airport never rewrites another. The snapshot is loaded on first use.
+final class Shard {
+    private final String key;
+    private final Path snapshotFile;
+    private final Journal journal;
+    // Commands share the read side; replacing the model (new, import, compaction) takes the write side
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Airport airport;
+    private MappedFleetStore store;
+
+    Shard(final String key, final Path directory, final long compactThreshold) {
+        this.key = key;
+        this.snapshotFile = directory.resolve("airlines.bin");
+        this.journal = new Journal(directory.resolve("airlines.journal"), compactThreshold);
+    }
+
+    String key() {
+        return key;
+    }
+
+    Path snapshotFile() {
+        return snapshotFile;
+    }
+
+    // Default target of export, next to the snapshot
+    Path jsonFile() {
+        return snapshotFile.resolveSibling("airlines.json");
+    }
+
+    Journal journal() {
+        return journal;
+    }
+
+    ReentrantReadWriteLock lock() {
+        return lock;
+    }
+
+    boolean isLoaded() {
+        return airport != null;
+    }
+
+    // Whether the model is served from a mapped snapshot, whose airplane records fly and refuel write in place
+    boolean isMapped() {
+        return store != null;
+    }
+
+    Airport airport() {
+        final Airport loaded = airport;
+        return loaded != null ? loaded : load();
+    }
+
+    // Unreadable state is reported and whatever could be read is kept, as a fresh airport at worst
+    synchronized Airport load() {
+        if (airport != null) {
+            return airport;
+        }
+        final long start = Metrics.start();
+        Airport loaded = new Airport("Global Airport", 10); // Default capacity
+        boolean complete = false;
+        try {
+            if (Files.exists(snapshotFile)) {
+                store = MappedFleetStore.open(snapshotFile);
+                loaded = store.getAirport();
+            } else if (Files.exists(jsonFile())) {
+                // State written by versions that kept airlines.json as the snapshot
+                loaded = DataManager.importData(jsonFile());
+            }
+            journal.replay(loaded);
+            complete = true;
+        } catch (final IOException e) {
+            System.err.println("Warning: Could not load data of " + key + " - " + e.getMessage());
+        }
+        // Versions of the previous process are gone, so deltas start from the loaded state
+        loaded.markBaseline();
+        if (complete && !Files.exists(snapshotFile)) {
+            // airlines.json is also export's default target, so the state moves into a snapshot before
+            // anything can overwrite it; the journal would otherwise replay on top of an exported file
+            try {
+                write(loaded);
+            } catch (final IOException e) {
+                System.err.println("Warning: Could not write snapshot of " + key + " - " + e.getMessage());
+            }
+        }
+        airport = loaded;
+        Metrics.stop("shard.load", start);
+        return loaded;
+    }
+
+    // Replaces the model, e.g. for new and import; callers hold the write lock
+    synchronized void replace(final Airport replacement) throws IOException {
+        replacement.markBaseline();
+        airport = replacement;
+        save();
+    }
+
+    synchronized void save() throws IOException {
+        write(airport());
+    }
+
+    private void write(final Airport state) throws IOException {
+        final long start = Metrics.start();
+        Files.createDirectories(snapshotFile.getParent());
+        DataManager.exportSnapshot(state, snapshotFile);
+        if (store != null) {
+            // Writing the snapshot loaded every airline, so the model no longer needs the old mapping
+            store.close();
+            store = null;
+        }
+        journal.reset();
+        Metrics.stop("save", start);
+    }
+
+    // Compaction rewrites the snapshot from the whole model, so it waits for running commands
+    void compactIfNeeded() throws IOException {
+        if (!journal.needsCompaction()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (journal.needsCompaction()) {
+                save();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void record(final Journal.Op op, final String... args) throws IOException {
+        journal.append(op, args);
+    }
+}
@@ -0,0 +1,104 @@
+package com.airport;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+// Ordered secondary index over one fleet column, built on the first sorted read and then kept in
+// step by Fleet under its write lock. Entries order by key and then by insertion sequence, which
+// is also the slot order, so a walk yields exactly what a stable sort of the snapshot would.
+final class SortIndex implements Iterable<Airplane> {
+    private static final Comparator<Entry> BY_MODEL = Comparator
+            .comparing((Entry entry) -> entry.model)
+            .thenComparingLong(entry -> entry.sequence);
+    private static final Comparator<Entry> BY_KEY = Comparator
+            .comparingDouble((Entry entry) -> entry.key)
+            .thenComparingLong(entry -> entry.sequence);
+
+    private static final class Entry {
+        private final String model;
+        private final double key;
+        private final long sequence;
+        private final Airplane airplane;
+
+        private Entry(final String model, final double key, final long sequence, final Airplane airplane) {
+            this.model = model;
+            this.key = key;
+            this.sequence = sequence;
+            this.airplane = airplane;
+        }
+    }
+
+    private final int column;
+    private final TreeSet<Entry> entries;
+
+    SortIndex(final AirlineSortOpts sort) {
+        this.column = column(sort);
+        this.entries = new TreeSet<>(sort == AirlineSortOpts.BY_NAME ? BY_MODEL : BY_KEY);
+    }
+
+    // Fleet column the index is keyed on, or UNMAPPED for the model order
+    static int column(final AirlineSortOpts sort) {
+        return switch (sort) {
+            case BY_NAME -> Fleet.UNMAPPED;
+            case BY_KM -> Fleet.KILOMETERS_FLOWN;
+            case BY_CAPACITY -> Fleet.FUEL_CAPACITY;
+            case BY_FUEL -> Fleet.CURRENT_FUEL;
+            case NONE -> throw new IllegalArgumentException("Insertion order needs no index");
+        };
+    }
+
+    int column() {
+        return column;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void add(final Airplane airplane, final double key, final long sequence) {
+        entries.add(new Entry(airplane.getModel(), key, sequence, airplane));
+    }
+
+    void remove(final Airplane airplane, final double key, final long sequence) {
+        entries.remove(new Entry(airplane.getModel(), key, sequence, null));
+    }
+
+    // Repositions one airplane after its key changed; the model never changes, so BY_NAME skips this
+    void move(final Airplane airplane, final double oldKey, final double newKey, final long sequence) {
+        if (Double.compare(oldKey, newKey) != 0) {
+            remove(airplane, oldKey, sequence);
+            add(airplane, newKey, sequence);
+        }
+    }
+
+    @Override
+    public Iterator<Airplane> iterator() {
+        return airplanes(entries.iterator());
+    }
+
+    // Highest key first; equal keys come in reverse insertion order
+    Iterator<Airplane> descending() {
+        return airplanes(entries.descendingIterator());
+    }
+
+    // Keys within [min, max] in ascending order, found in O(log n) before the walk starts
+    Iterator<Airplane> range(final double min, final double max) {
+        return airplanes(entries.subSet(new Entry(null, min, Long.MIN_VALUE, null), true,
+                new Entry(null, max, Long.MAX_VALUE, null), true).iterator());
+    }
+
+    private static Iterator<Airplane> airplanes(final Iterator<Entry> walk) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return walk.hasNext();
+            }
+
+            @Override
+            public Airplane next() {
+                return walk.next().airplane;
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.airport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Single-pass command line splitter. Arguments are separated by whitespace; double quotes group
+// words and allow \" and \\ inside, single quotes take everything literally, and outside quotes a
+// backslash escapes whitespace, a quote or another backslash. Any other backslash is kept as is,
+// so Windows paths need no doubling. Plain arguments are substrings of the line; a builder is
+// only allocated for arguments that contain quotes or escapes.
+final class Tokenizer {
+    private static final String[] EMPTY = new String[0];
+
+    private Tokenizer() {
+    }
+
+    static String[] tokenize(final String line) {
+        final int length = line.length();
+        List<String> tokens = null;
+        int i = 0;
+        while (true) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            final int start = i;
+            StringBuilder token = null;
+            char quote = 0;
+            while (i < length) {
+                final char c = line.charAt(i);
+                if (quote == 0 && Character.isWhitespace(c)) {
+                    break;
+                }
+                if (c == quote) {
+                    quote = 0;
+                    i++;
+                } else if (quote == 0 && (c == '"' || c == '\'')) {
+                    token = token != null ? token : new StringBuilder(line.substring(start, i));
+                    quote = c;
+                    i++;
+                } else if (c == '\\' && quote != '\'' && i + 1 < length && isEscapable(line.charAt(i + 1), quote)) {
+                    token = token != null ? token : new StringBuilder(line.substring(start, i));
+                    token.append(line.charAt(i + 1));
+                    i += 2;
+                } else {
+                    if (token != null) {
+                        token.append(c);
+                    }
+                    i++;
+                }
+            }
+            if (quote != 0) {
+                throw new IllegalArgumentException("Unterminated " + (quote == '"' ? "double" : "single")
+                        + " quote at column " + (start + 1));
+            }
+
+            if (tokens == null) {
+                tokens = new ArrayList<>(8);
+            }
+            tokens.add(token != null ? token.toString() : line.substring(start, i));
+        }
+        return tokens != null ? tokens.toArray(EMPTY) : EMPTY;
+    }
+
+    private static boolean isEscapable(final char c, final char quote) {
+        if (quote == '"') {
+            return c == '"' || c == '\\';
+        }
+        return c == '"' || c == '\'' || c == '\\' || Character.isWhitespace(c);
+    }
+}
@@ -0,0 +1,25 @@
+package com.airport;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Change versions of one airport. The clock starts from the wall clock shifted left by 20 bits,
+// so a model loaded by a later process starts above every version an earlier one handed out,
+// unless that process averaged more than a million changes per millisecond. Clocks created in the
+// same millisecond hand out the same versions, so the random id tells their models apart.
+final class VersionClock {
+    private final String id = UUID.randomUUID().toString();
+    private final AtomicLong last = new AtomicLong(System.currentTimeMillis() << 20);
+
+    String id() {
+        return id;
+    }
+
+    long next() {
+        return last.incrementAndGet();
+    }
+
+    long current() {
+        return last.get();
+    }
+}
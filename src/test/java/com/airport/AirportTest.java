@@ -6,11 +6,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -72,6 +79,55 @@ class AirportTest {
         assertEquals("USA", manufacturerData.get("country"));
     }
 
+    @Test
+    void testExportSortedRoundTrip(@TempDir final Path tempDir) throws IOException {
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        final Airplane flown = new Airplane("A124", "747", manufacturer, 1.0, 600.0);
+        flown.fly(100);
+        airline.addAirplane(flown);
+        airport.addAirline(new Airline("Another Airline", 1));
+        airport.toggleStatus();
+        final Path testFile = tempDir.resolve("test-sorted.json");
+
+        DataManager.exportData(airport, testFile, new ExportOpts(AirportSortOpts.BY_NAME, AirlineSortOpts.BY_KM));
+        final Airport imported = DataManager.importData(testFile);
+
+        assertEquals(Airport.Status.CLOSED, imported.getStatus());
+        assertEquals(List.of("Another Airline", "Test Airline"),
+                imported.getAirlines().stream().map(Airline::getName).toList());
+        assertEquals(List.of("A123", "A124"),
+                imported.findAirline("Test Airline").getAirplanes().stream().map(Airplane::getId).toList());
+        assertEquals(100.0, imported.findAirline("Test Airline").findAirplane("A124").getKilometersFlown(), 0.01);
+    }
+
+    @Test
+    void testConcurrentExportsToOneTargetEachWriteWholeDocuments(@TempDir final Path tempDir) throws Exception {
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        final Path target = tempDir.resolve("shared.json");
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> exports = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                exports.add(pool.submit(() -> {
+                    DataManager.exportData(airport, target, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+                    return null;
+                }));
+            }
+            for (final Future<?> export : exports) {
+                export.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals("A123", DataManager.importData(target).findAirline("Test Airline").getAirplanes().get(0).getId());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of(target), files.toList());
+        }
+    }
+
     @Test
     void testImportData(@TempDir final Path tempDir) throws IOException {
         final Path testFile = tempDir.resolve("test-import.json");
@@ -119,6 +175,330 @@ class AirportTest {
         assertEquals("France", manufacturerMap.get("country"));
     }
 
+    @Test
+    void testImportDataBuildsDomainObjects(@TempDir final Path tempDir) throws IOException {
+        final Path testFile = tempDir.resolve("test-import.json");
+        Files.writeString(testFile, "{\"name\":\"Closed Airport\",\"airlines\":[{\"name\":\"Imported Airline\","
+                + "\"airplanes\":[{\"id\":\"I001\",\"model\":\"A320\",\"extra\":{\"nested\":[1,2]},"
+                + "\"manufacturer\":{\"name\":\"Airbus\",\"country\":\"France\"},\"fuelForKilometer\":4.0,"
+                + "\"fuelCapacity\":400.0,\"currentFuel\":200.0,\"kilometersFlown\":100.0}],"
+                + "\"maxAirplanes\":1,\"operational\":true}],\"status\":\"CLOSED\",\"maxAirlines\":3}");
+
+        final Airport imported = DataManager.importData(testFile);
+
+        assertEquals("Closed Airport", imported.getName());
+        assertEquals(3, imported.getMaxAirlines());
+        assertEquals(Airport.Status.CLOSED, imported.getStatus());
+        final Airline importedAirline = imported.findAirline("Imported Airline");
+        assertEquals(1, importedAirline.getMaxAirplanes());
+        final Airplane importedAirplane = importedAirline.findAirplane("I001");
+        assertEquals("Airbus", importedAirplane.getManufacturer().getName());
+        assertEquals(200.0, importedAirplane.getCurrentFuel(), 0.01);
+        assertEquals(100.0, importedAirplane.getKilometersFlown(), 0.01);
+    }
+
+    @Test
+    void testSnapshotRoundTrip(@TempDir final Path tempDir) throws IOException {
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        airplane.fly(20);
+        airline.addAirplane(new Airplane("A124", "A320", new Manufacturer("Airbus", "France"), 4.0, 400.0));
+        airport.addAirline(new Airline("Empty Airline", 1));
+        airport.toggleStatus();
+        final Path snapshot = tempDir.resolve("airlines.bin");
+
+        DataManager.exportSnapshot(airport, snapshot);
+        final Airport restored = DataManager.importSnapshot(snapshot);
+
+        assertEquals("Test Airport", restored.getName());
+        assertEquals(2, restored.getMaxAirlines());
+        assertEquals(Airport.Status.CLOSED, restored.getStatus());
+        assertEquals(List.of("Test Airline", "Empty Airline"),
+                restored.getAirlines().stream().map(Airline::getName).toList());
+        final Airplane restoredAirplane = restored.findAirline("Test Airline").findAirplane("A123");
+        assertEquals("737", restoredAirplane.getModel());
+        assertEquals("Boeing", restoredAirplane.getManufacturer().getName());
+        assertEquals(400.0, restoredAirplane.getCurrentFuel(), 0.01);
+        assertEquals(20.0, restoredAirplane.getKilometersFlown(), 0.01);
+        assertEquals("France", restored.findAirline("Test Airline").findAirplane("A124").getManufacturer().getCountry());
+    }
+
+    @Test
+    void testMappedStoreLoadsLazilyAndWritesInPlace(@TempDir final Path tempDir) throws IOException {
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        airport.addAirline(new Airline("Other Airline", 1));
+        final Path snapshot = tempDir.resolve("airlines.bin");
+        DataManager.exportSnapshot(airport, snapshot);
+
+        final MappedFleetStore store = MappedFleetStore.open(snapshot);
+        final Airline mappedAirline = store.getAirport().findAirline("Test Airline");
+        assertFalse(mappedAirline.isLoaded());
+        assertTrue(mappedAirline.isOperational());
+        final Airplane mappedAirplane = mappedAirline.findAirplane("A123");
+        assertTrue(mappedAirline.isLoaded());
+        assertFalse(store.getAirport().findAirline("Other Airline").isLoaded());
+        assertTrue(mappedAirplane.isMapped());
+        mappedAirplane.fly(10);
+        store.force();
+
+        final Airplane reread = DataManager.importSnapshot(snapshot).findAirline("Test Airline").findAirplane("A123");
+        assertEquals(450.0, reread.getCurrentFuel(), 0.01);
+        assertEquals(10.0, reread.getKilometersFlown(), 0.01);
+
+        store.close();
+        assertFalse(mappedAirplane.isMapped());
+        mappedAirplane.fly(10);
+        assertEquals(400.0, mappedAirplane.getCurrentFuel(), 0.01);
+        assertEquals(450.0, MappedFleetStore.open(snapshot).getAirport().findAirline("Test Airline")
+                .findAirplane("A123").getCurrentFuel(), 0.01);
+    }
+
+    @Test
+    void testManufacturerRegistrySharesInstances(@TempDir final Path tempDir) throws IOException {
+        assertSame(Manufacturer.of("Boeing", "USA"), Manufacturer.of("Boeing", "USA"));
+        assertEquals(manufacturer, Manufacturer.of("Boeing", "USA"));
+        assertNotEquals(Manufacturer.of("Boeing", "USA"), Manufacturer.of("Boeing", "Canada"));
+
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        airline.addAirplane(new Airplane("A124", "747", new Manufacturer("Boeing", "USA"), 5.0, 600.0));
+        final Path json = tempDir.resolve("airlines.json");
+        final Path snapshot = tempDir.resolve("airlines.bin");
+        DataManager.exportData(airport, json, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        DataManager.exportSnapshot(airport, snapshot);
+
+        for (final Airport loaded : List.of(DataManager.importData(json), DataManager.importSnapshot(snapshot))) {
+            final Airline loadedAirline = loaded.findAirline("Test Airline");
+            assertSame(Manufacturer.of("Boeing", "USA"), loadedAirline.findAirplane("A123").getManufacturer());
+            assertSame(Manufacturer.of("Boeing", "USA"), loadedAirline.findAirplane("A124").getManufacturer());
+        }
+    }
+
+    @Test
+    void testImportSnapshotRejectsJson(@TempDir final Path tempDir) throws IOException {
+        final Path file = tempDir.resolve("airlines.bin");
+        Files.writeString(file, "{\"name\":\"Not binary\"}");
+        assertThrows(IOException.class, () -> DataManager.importSnapshot(file));
+    }
+
+    @Test
+    void testLegacyJsonStateSurvivesDefaultExport(@TempDir final Path tempDir) throws IOException {
+        // An install from before snapshots: airlines.json plus a journal of later changes
+        airport.addAirline(airline);
+        DataManager.exportData(airport, tempDir.resolve("airlines.json"),
+                new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        final Journal journal = new Journal(tempDir.resolve("airlines.journal"), 1 << 20);
+        journal.append(Journal.Op.AIRPLANE_ADD, "Test Airline", "A123", "737", "Boeing", "USA", "5.0", "500.0");
+
+        final Shard shard = new Shard(AirportRegistry.DEFAULT, tempDir, 1 << 20);
+        assertEquals(1, shard.airport().findAirline("Test Airline").getAirplanes().size());
+        assertTrue(Files.exists(shard.snapshotFile()));
+        DataManager.exportData(shard.airport(), shard.jsonFile(),
+                new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        shard.airport().addAirline(new Airline("Later Airline", 1));
+        shard.record(Journal.Op.AIRLINE_ADD, "Later Airline", "1");
+
+        final Shard reloaded = new Shard(AirportRegistry.DEFAULT, tempDir, 1 << 20);
+        assertEquals(2, reloaded.airport().getAirlines().size());
+        assertEquals(1, reloaded.airport().findAirline("Test Airline").getAirplanes().size());
+    }
+
+    @Test
+    void testJournalReplayRestoresState(@TempDir final Path tempDir) throws IOException {
+        final Journal journal = new Journal(tempDir.resolve("airlines.journal"), 1 << 20);
+        journal.append(Journal.Op.AIRLINE_ADD, "Test Airline", "2");
+        journal.append(Journal.Op.AIRPLANE_ADD, "Test Airline", "A123", "737", "Boeing", "USA", "5.0", "500.0");
+        journal.append(Journal.Op.AIRPLANE_STATE, "Test Airline", "A123", "250.0", "50.0");
+        journal.append(Journal.Op.AIRLINE_RENAME, "Test Airline", "Renamed Airline");
+        journal.append(Journal.Op.AIRPORT_STATUS, "CLOSED");
+
+        assertEquals(5, journal.replay(airport));
+        final Airplane replayed = airport.findAirline("Renamed Airline").findAirplane("A123");
+        assertEquals(250.0, replayed.getCurrentFuel(), 0.01);
+        assertEquals(50.0, replayed.getKilometersFlown(), 0.01);
+        assertEquals(Airport.Status.CLOSED, airport.getStatus());
+    }
+
+    @Test
+    void testJournalIgnoresTornTail(@TempDir final Path tempDir) throws IOException {
+        final Path path = tempDir.resolve("airlines.journal");
+        final Journal journal = new Journal(path, 1 << 20);
+        journal.append(Journal.Op.AIRLINE_ADD, "Test Airline", "2");
+        Files.writeString(path, "[\"AIRLINE_ADD\",\"Ot", java.nio.file.StandardOpenOption.APPEND);
+
+        assertEquals(1, journal.replay(airport));
+        assertEquals(1, airport.getAirlines().size());
+    }
+
+    @Test
+    void testJournalAppendsAfterTornTailStartANewLine(@TempDir final Path tempDir) throws IOException {
+        final Path path = tempDir.resolve("airlines.journal");
+        new Journal(path, 1 << 20).append(Journal.Op.AIRLINE_ADD, "Test Airline", "2");
+        Files.writeString(path, "[\"AIRLINE_ADD\",\"Ot", java.nio.file.StandardOpenOption.APPEND);
+
+        // The process that crashed is gone; the next one appends before anything replays
+        final Journal restarted = new Journal(path, 1 << 20);
+        restarted.append(Journal.Op.AIRLINE_ADD, "Second Airline", "3");
+        restarted.append(Journal.Op.AIRPORT_STATUS, "CLOSED");
+
+        assertEquals(3, new Journal(path, 1 << 20).replay(airport));
+        assertEquals(2, airport.getAirlines().size());
+        assertEquals(Airport.Status.CLOSED, airport.getStatus());
+    }
+
+    @Test
+    void testJournalNeedsCompactionPastThreshold(@TempDir final Path tempDir) throws IOException {
+        final Journal journal = new Journal(tempDir.resolve("airlines.journal"), 64);
+        assertFalse(journal.needsCompaction());
+        journal.append(Journal.Op.AIRLINE_ADD, "An airline with a rather long name", "10");
+        journal.append(Journal.Op.AIRLINE_REMOVE, "An airline with a rather long name");
+        assertTrue(journal.needsCompaction());
+        journal.reset();
+        assertFalse(journal.needsCompaction());
+    }
+
+    @Test
+    void testJournalBuffersUntilFlush(@TempDir final Path tempDir) throws IOException {
+        final Path path = tempDir.resolve("airlines.journal");
+        final Journal journal = new Journal(path, 1 << 20);
+        journal.buffer();
+        journal.append(Journal.Op.AIRLINE_ADD, "Test Airline", "2");
+        journal.append(Journal.Op.AIRPORT_STATUS, "CLOSED");
+        assertFalse(Files.exists(path));
+
+        journal.flush();
+        journal.append(Journal.Op.AIRPORT_RENAME, "Held Back");
+        journal.unbuffer();
+        assertEquals(3, journal.replay(airport));
+        assertEquals("Held Back", airport.getName());
+
+        journal.buffer();
+        journal.append(Journal.Op.AIRPORT_RENAME, "Dropped");
+        journal.reset();
+        journal.unbuffer();
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void testJournalNestedBufferingWritesOnceAtTheOuterEnd(@TempDir final Path tempDir) throws IOException {
+        // A batch buffers the whole run; a bulk line inside it buffers and unbuffers again
+        final Path path = tempDir.resolve("airlines.journal");
+        final Journal journal = new Journal(path, 1 << 20);
+        journal.buffer();
+        journal.append(Journal.Op.AIRLINE_ADD, "Test Airline", "2");
+        journal.buffer();
+        journal.append(Journal.Op.AIRPLANE_ADD, "Test Airline", "A123", "737", "Boeing", "USA", "5.0", "500.0");
+        journal.unbuffer();
+        journal.append(Journal.Op.AIRPORT_STATUS, "CLOSED");
+        assertFalse(Files.exists(path));
+
+        // A checkpoint writes what is pending and keeps buffering
+        journal.flush();
+        journal.append(Journal.Op.AIRPORT_RENAME, "After Checkpoint");
+        assertEquals(3, Files.readAllLines(path).size());
+        journal.unbuffer();
+        assertEquals(4, journal.replay(airport));
+        assertEquals("After Checkpoint", airport.getName());
+
+        // Unbuffered again: each entry is written at once
+        journal.append(Journal.Op.AIRPORT_STATUS, "OPEN");
+        assertEquals(5, Files.readAllLines(path).size());
+    }
+
+    @Test
+    void testJournalGroupCommitFlushesOnStop(@TempDir final Path tempDir) throws IOException {
+        final Path path = tempDir.resolve("airlines.journal");
+        final Journal journal = new Journal(path, 1 << 20);
+        journal.startGroupCommit(60_000);
+        journal.append(Journal.Op.AIRLINE_ADD, "Test Airline", "2");
+        journal.buffer();
+        journal.unbuffer();
+        journal.append(Journal.Op.AIRPORT_STATUS, "CLOSED");
+        assertEquals(1, Files.readAllLines(path).size());
+
+        journal.stopGroupCommit();
+        journal.stopGroupCommit();
+        assertEquals(2, journal.replay(airport));
+        journal.append(Journal.Op.AIRPORT_RENAME, "Written Through");
+        assertEquals(3, Files.readAllLines(path).size());
+    }
+
+    @Test
+    void testMetricsHistogramAndExportCounters(@TempDir final Path tempDir) throws IOException {
+        final Metrics.Histogram histogram = new Metrics.Histogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_000, histogram.percentile(0.50), 500_000 * 0.125);
+        assertEquals(990_000, histogram.percentile(0.99), 990_000 * 0.125);
+        for (long value = 0; value < 1 << 20; value += 97) {
+            assertTrue(Metrics.Histogram.upperBound(Metrics.Histogram.bucket(value)) >= value);
+        }
+
+        final long before = Metrics.counterValue("bytes.export.json");
+        final Path file = tempDir.resolve("metrics.json");
+        airport.addAirline(airline);
+        DataManager.exportData(airport, file, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        assertEquals(before + Files.size(file), Metrics.counterValue("bytes.export.json"));
+        assertTrue(Metrics.latencyCount("export.json") > 0);
+        assertTrue(Metrics.toJson().contains("\"export.json\""));
+    }
+
+    @Test
+    void testTokenizerQuotesAndEscapes() {
+        assertArrayEquals(new String[]{"add", "airline", "Air France", "5"},
+                Tokenizer.tokenize("  add airline \"Air France\"   5 "));
+        assertArrayEquals(new String[]{"say \"hi\"", "it's", "a b"},
+                Tokenizer.tokenize("\"say \\\"hi\\\"\" \"it's\" a\\ b"));
+        assertArrayEquals(new String[]{"C:\\data\\out.json", "lit\\\"eral"},
+                Tokenizer.tokenize("C:\\data\\out.json 'lit\\\"eral'"));
+        assertEquals(0, Tokenizer.tokenize("   ").length);
+        assertThrows(IllegalArgumentException.class, () -> Tokenizer.tokenize("add airline \"Air France 5"));
+        assertThrows(IllegalArgumentException.class, () -> Tokenizer.tokenize("add 'oops"));
+    }
+
+    @Test
+    void testDaemonForwardsArgumentsAndOutput(@TempDir final Path tempDir) throws Exception {
+        final Path socket = tempDir.resolve("airport.sock");
+        final Thread server = new Thread(() -> {
+            try {
+                Daemon.serve(socket, (args, out) -> out.println(args.length + ":" + String.join("|", args)));
+            } catch (final IOException ignored) {
+                // Socket closed when the test JVM exits
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        Daemon.Connection connection = null;
+        for (int attempt = 0; attempt < 50 && connection == null; attempt++) {
+            Thread.sleep(20);
+            connection = Daemon.connect(socket);
+        }
+        assertNotNull(connection);
+        try (Daemon.Connection open = connection) {
+            final java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            open.send(new String[] {"add", "airline", "Two Words", "3"}, new java.io.PrintStream(bytes, true));
+            open.send(new String[] {"list"}, new java.io.PrintStream(bytes, true));
+            assertEquals("4:add|airline|Two Words|3" + System.lineSeparator() + "1:list" + System.lineSeparator(),
+                    bytes.toString());
+        }
+        assertNull(Daemon.connect(tempDir.resolve("missing.sock")));
+
+        // A second daemon must not take the socket over while the first one answers
+        final IOException refused = assertThrows(IOException.class,
+                () -> Daemon.serve(socket, (args, out) -> out.println("second")));
+        assertTrue(refused.getMessage().contains("already serving"));
+        try (Daemon.Connection open = Daemon.connect(socket)) {
+            final java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            open.send(new String[] {"list"}, new java.io.PrintStream(bytes, true));
+            assertEquals("1:list" + System.lineSeparator(), bytes.toString());
+        }
+    }
+
     // Airport Logic Tests
     @Test
     void testAddAirlineWithinCapacity() {
@@ -174,6 +554,34 @@ class AirportTest {
         assertEquals(Airport.Status.OPEN, airport.getStatus());
     }
 
+    @Test
+    void testRenamedAirlineIsFoundByNewName() {
+        airport.addAirline(airline);
+        airline.updateName("Renamed Airline");
+        assertSame(airline, airport.findAirline("Renamed Airline"));
+        assertThrows(IllegalArgumentException.class, () -> airport.findAirline("Test Airline"));
+    }
+
+    @Test
+    void testDuplicateAirlineNameRejected() {
+        airport.addAirline(airline);
+        assertThrows(IllegalArgumentException.class, () -> airport.addAirline(new Airline("Test Airline", 1)));
+        final Airline other = new Airline("Other Airline", 1);
+        airport.addAirline(other);
+        assertThrows(IllegalArgumentException.class, () -> other.updateName("Test Airline"));
+        assertSame(other, airport.findAirline("Other Airline"));
+    }
+
+    @Test
+    void testRemoveAirlineKeepsInsertionOrder() {
+        final Airport big = new Airport("Big", 3);
+        big.addAirline(new Airline("C", 1));
+        big.addAirline(new Airline("A", 1));
+        big.addAirline(new Airline("B", 1));
+        big.removeAirline("A");
+        assertEquals(List.of("C", "B"), big.getAirlines().stream().map(Airline::getName).toList());
+    }
+
     @Test
     void testFindNonExistingAirlineThrowsException() {
         assertThrows(IllegalArgumentException.class, () -> airport.findAirline("NonExistent"));
@@ -202,6 +610,489 @@ class AirportTest {
         assertThrows(IllegalArgumentException.class, () -> airline.findAirplane("A123"));
     }
 
+    @Test
+    void testDuplicateAirplaneIdRejected() {
+        airline.addAirplane(airplane);
+        assertThrows(IllegalArgumentException.class,
+                () -> airline.addAirplane(new Airplane("A123", "747", manufacturer, 5.0, 600.0)));
+    }
+
+    @Test
+    void testRemovedAirplaneKeepsItsState() {
+        airline.addAirplane(airplane);
+        final Airplane second = new Airplane("A124", "747", manufacturer, 5.0, 600.0);
+        airline.addAirplane(second);
+        airplane.fly(10);
+        airline.removeAirplane("A123");
+
+        assertEquals(450.0, airplane.getCurrentFuel(), 0.01);
+        airplane.fly(10);
+        assertEquals(400.0, airplane.getCurrentFuel(), 0.01);
+        assertSame(second, airline.findAirplane("A124"));
+        second.fly(20);
+        assertEquals(500.0, airline.findAirplane("A124").getCurrentFuel(), 0.01);
+        assertThrows(IllegalStateException.class, () -> new Airline("Other Airline", 1).addAirplane(second));
+    }
+
+    @Test
+    void testFleetTotalsAndColumnSorts() {
+        final Airline fleet = new Airline("Fleet", 4);
+        fleet.addAirplane(new Airplane("F1", "737", manufacturer, 1.0, 300.0, 100.0, 30.0));
+        fleet.addAirplane(new Airplane("F2", "737", manufacturer, 1.0, 100.0, 100.0, 10.0));
+        fleet.addAirplane(new Airplane("F3", "737", manufacturer, 1.0, 200.0, 50.0, 30.0));
+        fleet.addAirplane(new Airplane("F4", "737", manufacturer, 1.0, 400.0, 0.0, 20.0));
+
+        assertEquals(90.0, fleet.getTotalKilometersFlown(), 0.01);
+        assertEquals(250.0, fleet.getTotalCurrentFuel(), 0.01);
+        assertEquals(1000.0, fleet.getTotalFuelCapacity(), 0.01);
+        assertEquals(List.of("F2", "F4", "F1", "F3"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_KM)));
+        assertEquals(List.of("F4", "F3", "F1", "F2"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_FUEL)));
+        assertEquals(List.of("F2", "F3", "F1", "F4"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_CAPACITY)));
+        assertEquals(List.of("F1", "F2", "F3", "F4"), ids(fleet.airplanesSortedBy(AirlineSortOpts.NONE)));
+    }
+
+    @Test
+    void testSortIndexesFollowMutations() {
+        final Airline fleet = new Airline("Fleet", 4);
+        fleet.addAirplane(new Airplane("F1", "747", manufacturer, 1.0, 300.0, 100.0, 30.0));
+        fleet.addAirplane(new Airplane("F2", "737", manufacturer, 1.0, 100.0, 100.0, 10.0));
+        fleet.addAirplane(new Airplane("F3", "737", manufacturer, 1.0, 200.0, 50.0, 30.0));
+        assertEquals(List.of("F2", "F1", "F3"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_KM)));
+        assertEquals(List.of("F3", "F1", "F2"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_FUEL)));
+        assertEquals(List.of("F2", "F3", "F1"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_NAME)));
+
+        fleet.findAirplane("F2").fly(40);
+        fleet.findAirplane("F3").refuel(100);
+        assertEquals(List.of("F1", "F3", "F2"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_KM)));
+        assertEquals(List.of("F2", "F1", "F3"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_FUEL)));
+
+        fleet.removeAirplane("F1");
+        fleet.addAirplane(new Airplane("F4", "737", manufacturer, 1.0, 400.0, 60.0, 50.0));
+        assertEquals(List.of("F3", "F2", "F4"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_KM)));
+        assertEquals(List.of("F2", "F3", "F4"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_NAME)));
+        assertEquals(List.of("F2", "F3", "F4"), ids(fleet.airplanesSortedBy(AirlineSortOpts.BY_CAPACITY)));
+        final FleetSnapshot byFuel = fleet.snapshot(AirlineSortOpts.BY_FUEL);
+        assertEquals(60.0, byFuel.currentFuel(0), 0.01);
+        assertEquals(150.0, byFuel.currentFuel(2), 0.01);
+
+        final Airport sorted = new Airport("Sorted", 3);
+        sorted.addAirline(new Airline("Delta", 1));
+        sorted.addAirline(new Airline("Alpha", 1));
+        sorted.addAirline(new Airline("Charlie", 1));
+        sorted.findAirline("Delta").updateName("Bravo");
+        assertEquals(List.of("Alpha", "Bravo", "Charlie"),
+                sorted.airlinesSortedByName().stream().map(Airline::getName).toList());
+    }
+
+    @Test
+    void testFleetQueryFiltersAndGroups() {
+        final Airport fleets = new Airport("Fleets", 5);
+        final Manufacturer airbus = new Manufacturer("Airbus", "France");
+        for (int a = 0; a < 4; a++) {
+            final Airline carrier = new Airline("Carrier " + a, 5000);
+            fleets.addAirline(carrier);
+            for (int i = 0; i < 5000; i++) {
+                final double fuel = i % 10 == 0 ? 10.0 : 100.0;
+                carrier.addAirplane(new Airplane(a + "-" + i, i % 2 == 0 ? "A320" : "737",
+                        i % 2 == 0 ? airbus : manufacturer, 1.0, 100.0, fuel, i % 100));
+            }
+        }
+        assertTrue(4 * 5000 >= FleetQuery.PARALLEL_THRESHOLD);
+
+        final List<FleetQuery.Row> byManufacturer = new FleetQuery().groupBy(FleetQuery.Group.MANUFACTURER)
+                .aggregate(fleets, FleetQuery.Aggregate.SUM, FleetQuery.Field.KM);
+        assertEquals(List.of("Airbus", "Boeing"), byManufacturer.stream().map(FleetQuery.Row::group).toList());
+        assertEquals(4 * 50 * 2450.0, byManufacturer.get(0).value(), 0.01);
+        assertEquals(10_000, byManufacturer.get(1).count());
+
+        final List<FleetQuery.Match> low = new FleetQuery().where("fuelRatio<0.2").select(fleets);
+        assertEquals(2000, low.size());
+        assertEquals("Carrier 0", low.get(0).airline());
+        assertEquals("3-4990", low.get(low.size() - 1).airplane().getId());
+
+        final List<FleetQuery.Row> needed = new FleetQuery().where("airline=Carrier 1").where("manufacturer!=Boeing")
+                .aggregate(fleets, FleetQuery.Aggregate.SUM, FleetQuery.Field.FUEL_NEEDED);
+        assertEquals(1, needed.size());
+        assertEquals(500 * 90.0, needed.get(0).value(), 0.01);
+        assertTrue(Double.isNaN(new FleetQuery().where("km>1000")
+                .aggregate(fleets, FleetQuery.Aggregate.AVG, FleetQuery.Field.KM).get(0).value()));
+        assertThrows(IllegalArgumentException.class, () -> new FleetQuery().where("altitude>5"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FleetQuery().aggregate(fleets, FleetQuery.Aggregate.MAX, null));
+    }
+
+    @Test
+    void testBulkFlyAndRefuelReportFailuresPerItem() throws IOException {
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        final Airline other = new Airline("Other", 2);
+        airport.addAirline(other);
+        other.addAirplane(new Airplane("O1", "A320", manufacturer, 1.0, 100.0));
+
+        final List<FleetBulk.Failure> failures = new ArrayList<>();
+        final List<FleetBulk.Leg> legs = FleetBulk.readLegs(new BufferedReader(new StringReader(
+                "airline,id,km\nTest Airline,A123,20\nOther,O1,30\nTest Airline,A123,20\nOther,O1,x\n"
+                        + "Test Airline,A123,70\nOther,Missing,5\nGone,G1,5\n")), failures);
+        assertEquals(6, legs.size());
+        assertEquals(5, failures.get(0).line());
+
+        final FleetBulk.Report flown = FleetBulk.fly(airport, legs, FleetBulk.direct(airport));
+        assertEquals(6, flown.attempted());
+        assertEquals(3, flown.succeeded());
+        assertEquals(List.of(6, 7, 8), flown.failures().stream().map(FleetBulk.Failure::line).toList());
+        assertTrue(flown.failures().get(0).reason().contains("Not enough fuel"));
+        assertEquals(40.0, airplane.getKilometersFlown(), 0.01);
+        assertEquals(300.0, airplane.getCurrentFuel(), 0.01);
+        assertEquals(70.0, other.findAirplane("O1").getCurrentFuel(), 0.01);
+
+        final FleetBulk.Report refueled = FleetBulk.refuelAll(airport, 0.7, FleetBulk.direct(airport));
+        assertEquals(2, refueled.attempted());
+        assertEquals(1, refueled.succeeded());
+        assertEquals(500.0, airplane.getCurrentFuel(), 0.01);
+        assertEquals(70.0, other.findAirplane("O1").getCurrentFuel(), 0.01);
+        assertEquals(List.of(other.findAirplane("O1")), other.refuelAll(1.0));
+        assertEquals(100.0, other.findAirplane("O1").getCurrentFuel(), 0.01);
+    }
+
+    @Test
+    void testFlightSimulationIsDeterministicPerSeed() {
+        final Airport fleets = new Airport("Fleets", 4);
+        for (int a = 0; a < 4; a++) {
+            final Airline carrier = new Airline("Carrier " + a, 50);
+            fleets.addAirline(carrier);
+            for (int i = 0; i < 50; i++) {
+                carrier.addAirplane(new Airplane(a + "-" + i, "A320", manufacturer, 1.0 + i % 3, 1000.0 + 500 * a));
+            }
+        }
+
+        final FlightSimulation.Config config = new FlightSimulation.Config(7, 240);
+        final Airport first = fleets.copy();
+        final FlightSimulation.Report report = FlightSimulation.run(first, config);
+        final FlightSimulation.Report again = FlightSimulation.run(fleets.copy(), config);
+        assertEquals(report.airlines(), again.airlines());
+        assertTrue(report.legs() > 0 && report.refuels() > 0);
+        assertEquals(report.kilometers(), first.getAirlines().stream()
+                .mapToDouble(Airline::getTotalKilometersFlown).sum(), 1e-6);
+        assertEquals(0.0, fleets.findAirline("Carrier 0").getTotalKilometersFlown(), 0.01);
+        assertNotEquals(report.airlines(),
+                FlightSimulation.run(fleets.copy(), new FlightSimulation.Config(8, 240)).airlines());
+        // Runs that could never finish are rejected up front
+        assertThrows(IllegalArgumentException.class, () -> new FlightSimulation.Config(7, Double.POSITIVE_INFINITY));
+        assertThrows(IllegalArgumentException.class, () -> new FlightSimulation.Config(7, Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> new FlightSimulation.Config(7, 1e12));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FlightSimulation.Config(7, 240, 200, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void testCopyIsDeepAndCarriesAllPersistedState() {
+        airport.addAirline(airline);
+        airline.addAirplane(airplane);
+        airplane.fly(20);
+        airport.setStatus(Airport.Status.CLOSED);
+
+        final Airport copy = airport.copy();
+        final Airplane copied = copy.findAirline("Test Airline").findAirplane("A123");
+        assertNotSame(airplane, copied);
+        assertEquals(Airport.Status.CLOSED, copy.getStatus());
+        assertEquals(airplane.getModel(), copied.getModel());
+        assertEquals(airplane.getManufacturer(), copied.getManufacturer());
+        assertEquals(airplane.getFuelForKilometer(), copied.getFuelForKilometer(), 0.0);
+        assertEquals(airplane.getFuelCapacity(), copied.getFuelCapacity(), 0.0);
+        assertEquals(airplane.getCurrentFuel(), copied.getCurrentFuel(), 0.0);
+        assertEquals(20.0, copied.getKilometersFlown(), 0.0);
+
+        copied.fly(10);
+        copy.setStatus(Airport.Status.OPEN);
+        copy.removeAirline("Test Airline");
+        assertEquals(20.0, airplane.getKilometersFlown(), 0.0);
+        assertEquals(1, airport.getAirlines().size());
+        assertEquals(Airport.Status.CLOSED, airport.getStatus());
+    }
+
+    @Test
+    void testPersistentVectorSharesOlderVersions() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        final List<PersistentVector<Integer>> versions = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            if (i % 1000 == 0) {
+                versions.add(vector);
+            }
+            vector = vector.append(i);
+        }
+        assertEquals(40_000, vector.size());
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(i * 1000, versions.get(i).size());
+        }
+        int expected = 0;
+        for (final int value : vector) {
+            assertEquals(expected++, value);
+        }
+
+        final PersistentVector<Integer> changed = vector.with(1234, -1).with(39_999, -2);
+        assertEquals(-1, changed.get(1234));
+        assertEquals(-2, changed.get(39_999));
+        assertEquals(1234, vector.get(1234));
+        final PersistentVector<Integer> removed = changed.without(0).without(changed.size() - 2);
+        assertEquals(39_998, removed.size());
+        assertEquals(1, removed.get(0));
+        assertEquals(List.of(39_997, 39_998), removed.subList(39_996, 39_998));
+        final PersistentVector<Integer> full = vector;
+        assertThrows(UnsupportedOperationException.class, () -> full.add(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> full.get(40_000));
+
+        airport.addAirline(airline);
+        final List<Airline> before = airport.getAirlines();
+        assertSame(before, airport.getAirlines());
+        airport.addAirline(new Airline("Second", 1));
+        assertEquals(1, before.size());
+        assertEquals(2, airport.getAirlines().size());
+        airline.addAirplane(airplane);
+        final List<Airplane> airplanes = airline.getAirplanes();
+        airline.removeAirplane("A123");
+        assertEquals(List.of(airplane), airplanes);
+        assertTrue(airline.getAirplanes().isEmpty());
+    }
+
+    private static List<String> ids(final List<Airplane> airplanes) {
+        return airplanes.stream().map(Airplane::getId).toList();
+    }
+
+    @Test
+    void testRegistryShardsLoadLazilyAndSaveIndependently(@TempDir final Path tempDir) throws IOException {
+        final AirportRegistry registry = new AirportRegistry(tempDir, 1 << 20);
+        final Shard jfk = registry.create("jfk");
+        jfk.replace(new Airport("JFK", 5));
+        final Shard main = registry.get(AirportRegistry.DEFAULT);
+        main.airport().addAirline(new Airline("Delta", 3));
+        main.record(Journal.Op.AIRLINE_ADD, "Delta", "3");
+        main.save();
+        assertEquals(List.of(AirportRegistry.DEFAULT, "jfk"), registry.keys());
+        assertThrows(IllegalArgumentException.class, () -> registry.get("lax"));
+        assertThrows(IllegalArgumentException.class, () -> registry.create("../lax"));
+
+        // Changing and saving one airport leaves the other's files untouched
+        final byte[] jfkSnapshot = Files.readAllBytes(jfk.snapshotFile());
+        jfk.airport().addAirline(new Airline("JetBlue", 2));
+        jfk.record(Journal.Op.AIRLINE_ADD, "JetBlue", "2");
+        final byte[] mainSnapshot = Files.readAllBytes(main.snapshotFile());
+        jfk.save();
+        assertArrayEquals(mainSnapshot, Files.readAllBytes(main.snapshotFile()));
+        assertFalse(Files.exists(main.journal().getPath()));
+        assertFalse(Arrays.equals(jfkSnapshot, Files.readAllBytes(jfk.snapshotFile())));
+
+        final AirportRegistry reopened = new AirportRegistry(tempDir, 1 << 20);
+        final Shard lazy = reopened.get("jfk");
+        assertFalse(lazy.isLoaded());
+        assertEquals(2, reopened.loadAll(2));
+        assertTrue(lazy.isLoaded());
+        assertEquals("JetBlue", lazy.airport().findAirline("JetBlue").getName());
+        assertEquals(1, reopened.get(AirportRegistry.DEFAULT).airport().getAirlines().size());
+        assertEquals(0, reopened.loadAll(2));
+    }
+
+    @Test
+    void testDeltaExportCarriesOnlyChangesAndAppliesAsPatch(@TempDir final Path tempDir) throws IOException {
+        final Airline other = new Airline("Other", 2);
+        airport.addAirline(airline);
+        airport.addAirline(other);
+        airline.addAirplane(airplane);
+        airline.addAirplane(new Airplane("A124", "747", manufacturer, 2.0, 800.0));
+        other.addAirplane(new Airplane("O1", "A320", Manufacturer.of("Airbus", "France"), 3.0, 300.0));
+        final Path base = tempDir.resolve("base.json");
+        DataManager.exportData(airport, base, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        final long since = airport.currentVersion();
+
+        airplane.fly(20);
+        airline.removeAirplane("A124");
+        airport.removeAirline("Other");
+        final Airline added = new Airline("Added", 1);
+        airport.addAirline(added);
+        added.addAirplane(new Airplane("N1", "737", manufacturer, 1.0, 100.0));
+        final Path patch = tempDir.resolve("patch.json");
+        final long version = DataManager.exportDelta(airport, patch, since);
+        assertTrue(version > since);
+
+        final Map<String, Object> document = new ObjectMapper().readValue(patch.toFile(), new TypeReference<>() {});
+        assertEquals(false, document.get("full"));
+        assertEquals(List.of(Map.of("airline", "Test Airline", "airplane", "A124"), Map.of("airline", "Other")),
+                document.get("removed"));
+        assertFalse(document.containsKey("status"));
+        final List<?> airlines = (List<?>) document.get("airlines");
+        assertEquals(2, airlines.size());
+        assertEquals(1, ((List<?>) ((Map<?, ?>) airlines.get(0)).get("airplanes")).size());
+
+        // Applying the patch to the exported base reproduces the current state
+        final Airport restored = DataManager.applyPatch(DataManager.importData(base), patch);
+        final Path expected = tempDir.resolve("expected.json");
+        final Path actual = tempDir.resolve("actual.json");
+        final ExportOpts opts = new ExportOpts(AirportSortOpts.BY_NAME, AirlineSortOpts.BY_NAME);
+        DataManager.exportData(airport, expected, opts);
+        DataManager.exportData(restored, actual, opts);
+        assertEquals(Files.readString(expected), Files.readString(actual));
+
+        // Nothing changed since the patch; a version before the baseline gets the whole airport
+        DataManager.exportDelta(airport, patch, version);
+        assertEquals("{\"since\":" + version + ",\"version\":" + version
+                + ",\"full\":false,\"removed\":[],\"airlines\":[]}", Files.readString(patch));
+        airport.markBaseline();
+        DataManager.exportDelta(airport, patch, since);
+        assertEquals("Test Airport", DataManager.applyPatch(new Airport("Empty", 1), patch).getName());
+    }
+
+    @Test
+    void testPartitionedExportRewritesOnlyChangedAirlines(@TempDir final Path tempDir) throws IOException {
+        final Airline other = new Airline("Other/Air", 2);
+        airport.addAirline(airline);
+        airport.addAirline(other);
+        airline.addAirplane(airplane);
+        other.addAirplane(new Airplane("O1", "A320", Manufacturer.of("Airbus", "France"), 3.0, 300.0));
+        final Path directory = tempDir.resolve("parts");
+        final ExportOpts opts = new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.BY_NAME);
+        assertEquals(2, DataManager.exportPartitioned(airport, directory, opts));
+        assertTrue(Files.exists(directory.resolve("Other_Air.json")));
+        assertEquals(0, DataManager.exportPartitioned(airport, directory, opts));
+
+        airplane.fly(10);
+        assertEquals(1, DataManager.exportPartitioned(airport, directory, opts));
+        airport.removeAirline("Other/Air");
+        assertEquals(0, DataManager.exportPartitioned(airport, directory, opts));
+        assertFalse(Files.exists(directory.resolve("Other_Air.json")));
+        // A different airplane order invalidates every airline file
+        assertEquals(1, DataManager.exportPartitioned(airport, directory,
+                new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE)));
+
+        final Airport imported = DataManager.importPartitioned(directory);
+        assertEquals(airport.getName(), imported.getName());
+        assertEquals(1, imported.getAirlines().size());
+        assertEquals(10.0, imported.findAirline("Test Airline").findAirplane("A123").getKilometersFlown(), 0.0);
+        assertEquals(450.0, imported.findAirline("Test Airline").findAirplane("A123").getCurrentFuel(), 0.0);
+
+        // Another model's manifest is never trusted, even if its versions overlap with this one's
+        final Airport second = new Airport("Second Airport", 2);
+        final Airline same = new Airline("Test Airline", 2);
+        second.addAirline(same);
+        same.addAirplane(new Airplane("S1", "737", manufacturer, 5.0, 500.0));
+        assertEquals(1, DataManager.exportPartitioned(second, directory,
+                new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE)));
+        assertEquals("S1", DataManager.importPartitioned(directory).findAirline("Test Airline")
+                .getAirplanes().get(0).getId());
+    }
+
+    @Test
+    void testTopAndRangeAgreeWithAndWithoutIndex() {
+        final Airline other = new Airline("Other", 5);
+        final Airline big = new Airline("Big", 5);
+        airport.addAirline(big);
+        airport.addAirline(other);
+        final double[] kilometers = {30, 10, 50, 10, 40};
+        for (int i = 0; i < kilometers.length; i++) {
+            big.addAirplane(new Airplane("B" + i, "737", manufacturer, 1.0, 100.0));
+            big.findAirplane("B" + i).fly(kilometers[i]);
+            other.addAirplane(new Airplane("O" + i, "737", manufacturer, 1.0, 100.0));
+            other.findAirplane("O" + i).fly(kilometers[i] + 5);
+        }
+
+        // Without an index a bounded heap answers; equal values come latest-added first
+        final List<Airplane> heapTop = big.top(FleetQuery.Field.KM, 4);
+        final List<Airplane> heapRange = big.range(FleetQuery.Field.KM, 10, 30);
+        assertEquals(List.of("B2", "B4", "B0", "B3"), heapTop.stream().map(Airplane::getId).toList());
+        assertEquals(List.of("B1", "B3", "B0"), heapRange.stream().map(Airplane::getId).toList());
+        big.snapshot(AirlineSortOpts.BY_KM);
+        assertEquals(heapTop, big.top(FleetQuery.Field.KM, 4));
+        assertEquals(heapRange, big.range(FleetQuery.Field.KM, 10, 30));
+
+        final List<String> top = airport.top(FleetQuery.Field.KM, 3).stream()
+                .map(match -> match.airline() + "/" + match.airplane().getId()).toList();
+        assertEquals(List.of("Other/O2", "Big/B2", "Other/O4"), top);
+        final List<String> range = airport.range(FleetQuery.Field.KM, 35, 45).stream()
+                .map(match -> match.airplane().getId()).toList();
+        assertEquals(List.of("O0", "B4", "O4"), range);
+        assertEquals(10, airport.top(FleetQuery.Field.FUEL, 20).size());
+        assertThrows(IllegalArgumentException.class, () -> airport.top(FleetQuery.Field.FUEL_RATIO, 3));
+        assertThrows(IllegalArgumentException.class, () -> big.top(FleetQuery.Field.KM, 0));
+        assertThrows(IllegalArgumentException.class, () -> big.range(FleetQuery.Field.KM, 5, 1));
+    }
+
+    @Test
+    void testCompressedExportRoundTrip(@TempDir final Path tempDir) throws IOException {
+        airport.addAirline(airline);
+        for (int i = 0; i < 2; i++) {
+            airline.addAirplane(new Airplane("G" + i, "737", manufacturer, 5.0, 500.0));
+        }
+        final Path plain = tempDir.resolve("airlines.json");
+        final Path byExtension = tempDir.resolve("airlines.json.gz");
+        final Path byOption = tempDir.resolve("forced.json");
+        DataManager.exportData(airport, plain, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        DataManager.exportData(airport, byExtension, new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE));
+        DataManager.exportData(airport, byOption,
+                new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE, Compression.GZIP));
+
+        for (final Path compressed : List.of(byExtension, byOption)) {
+            final byte[] bytes = Files.readAllBytes(compressed);
+            assertEquals((byte) 0x1f, bytes[0]);
+            assertEquals((byte) 0x8b, bytes[1]);
+            assertTrue(bytes.length < Files.size(plain));
+            final Airport imported = DataManager.importData(compressed);
+            assertEquals(airport.getName(), imported.getName());
+            assertEquals(2, imported.findAirline("Test Airline").getAirplanes().size());
+        }
+        assertEquals('{', Files.readString(plain).charAt(0));
+
+        // Directory targets compress every file too, and a change of compression rewrites them all
+        final Path directory = tempDir.resolve("parts");
+        final ExportOpts gzip = new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE, Compression.GZIP);
+        assertEquals(1, DataManager.exportPartitioned(airport, directory, gzip));
+        assertEquals(0, DataManager.exportPartitioned(airport, directory, gzip));
+        try (var files = Files.list(directory)) {
+            for (final Path file : files.toList()) {
+                assertEquals((byte) 0x1f, Files.readAllBytes(file)[0], file.toString());
+            }
+        }
+        assertEquals(2, DataManager.importPartitioned(directory).findAirline("Test Airline").getAirplanes().size());
+        assertEquals(1, DataManager.exportPartitioned(airport, directory,
+                new ExportOpts(AirportSortOpts.NONE, AirlineSortOpts.NONE)));
+        assertEquals('{', Files.readString(directory.resolve(DataManager.MANIFEST)).charAt(0));
+    }
+
+    @Test
+    void testConcurrentFlightsAreAtomicAndSnapshotsConsistent() throws Exception {
+        final Airline fleet = new Airline("Fleet", 4);
+        final Airplane plane = new Airplane("C1", "737", manufacturer, 1.0, 1000.0);
+        fleet.addAirplane(plane);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Integer>> flights = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                flights.add(pool.submit(() -> {
+                    int flown = 0;
+                    for (int i = 0; i < 500; i++) {
+                        try {
+                            plane.fly(1);
+                            flown++;
+                        } catch (final IllegalStateException e) {
+                            // Out of fuel
+                        }
+                        final FleetSnapshot snapshot = fleet.snapshot();
+                        assertEquals(1000.0, snapshot.currentFuel(0) + snapshot.kilometersFlown(0), 0.0);
+                    }
+                    return flown;
+                }));
+            }
+            int flown = 0;
+            for (final Future<Integer> flight : flights) {
+                flown += flight.get();
+            }
+
+            // Every fly that passed the fuel check is accounted for, and the last liter is never spent
+            assertEquals(999, flown);
+            assertEquals(999.0, plane.getKilometersFlown(), 0.0);
+            assertEquals(1.0, plane.getCurrentFuel(), 0.0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     @Test
     void testUpdateAirlineName() {
         airline.updateName("New Airline");